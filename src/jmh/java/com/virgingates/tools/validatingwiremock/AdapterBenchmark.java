@@ -0,0 +1,67 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.http.Response;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of adapting WireMock interactions for the validator: wrapping them alone, and wrapping them then reading
+ * everything the validator may ask for.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AdapterBenchmark {
+
+    @Param({"SMALL", "LARGE", "NESTED"})
+    public String body;
+
+    private LoggedRequest request;
+    private Response response;
+
+    @Setup
+    public void setUp() {
+        final BenchmarkFixtures.BodyShape shape = BenchmarkFixtures.BodyShape.valueOf(body);
+        request = BenchmarkFixtures.request(shape);
+        response = BenchmarkFixtures.response(shape);
+    }
+
+    @Benchmark
+    public com.atlassian.oai.validator.model.Request requestOf() {
+        return WireMockRequest.of(request);
+    }
+
+    @Benchmark
+    public void requestOfAndRead(final Blackhole blackhole) {
+        final com.atlassian.oai.validator.model.Request validatorRequest = WireMockRequest.of(request);
+        blackhole.consume(validatorRequest.getPath());
+        blackhole.consume(validatorRequest.getMethod());
+        blackhole.consume(validatorRequest.getQueryParameterValues("fields"));
+        blackhole.consume(validatorRequest.getHeaderValues("Accept"));
+        blackhole.consume(validatorRequest.getHeaders());
+        blackhole.consume(validatorRequest.getBody());
+    }
+
+    @Benchmark
+    public com.atlassian.oai.validator.model.Response responseOf() {
+        return WireMockResponse.of(response);
+    }
+
+    @Benchmark
+    public void responseOfAndRead(final Blackhole blackhole) {
+        final com.atlassian.oai.validator.model.Response validatorResponse = WireMockResponse.of(response);
+        blackhole.consume(validatorResponse.getStatus());
+        blackhole.consume(validatorResponse.getHeaderValues("Content-Type"));
+        blackhole.consume(validatorResponse.getBody());
+    }
+}
@@ -0,0 +1,163 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.HttpHeaders;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.Response;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Date;
+
+/**
+ * Generated definitions and interactions for the benchmarks.
+ * <p>
+ * Every definition has one operation per {@link BodyShape}, {@code POST /<shape>/{id}}, whose request and response
+ * bodies have that shape, plus as many filler operations as asked for, so that the cost of larger definitions can be
+ * measured against the same interactions.
+ */
+class BenchmarkFixtures {
+
+    enum BodyShape {
+        /**
+         * A single small object.
+         */
+        SMALL,
+        /**
+         * An array of 2000 objects, about 100KB.
+         */
+        LARGE,
+        /**
+         * An object nested 32 levels deep, each level described by its own schema.
+         */
+        NESTED;
+
+        private String path() {
+            return "/" + name().toLowerCase();
+        }
+    }
+
+    private static final int LARGE_ITEMS = 2000;
+    private static final int NESTED_DEPTH = 32;
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * @param fillerOperations the number of operations besides the benchmarked ones
+     * @return an OpenAPI 3 definition, as JSON.
+     */
+    static String specification(final int fillerOperations) {
+        final StringBuilder paths = new StringBuilder();
+        for (final BodyShape shape : BodyShape.values()) {
+            appendOperation(paths, shape.path(), shape == BodyShape.LARGE ? "{\"type\":\"array\",\"items\":{\"$ref\":\"#/components/schemas/Pet\"}}"
+                    : shape == BodyShape.NESTED ? "{\"$ref\":\"#/components/schemas/Node0\"}"
+                    : "{\"$ref\":\"#/components/schemas/Pet\"}");
+            paths.append(',');
+        }
+        for (int i = 0; i < fillerOperations; i++) {
+            appendOperation(paths, "/filler" + i, "{\"$ref\":\"#/components/schemas/Filler" + i + "\"}");
+            paths.append(',');
+        }
+        paths.setLength(paths.length() - 1);
+
+        final StringBuilder schemas = new StringBuilder()
+                .append("\"Pet\":{\"type\":\"object\",\"required\":[\"id\",\"name\"],\"properties\":{")
+                .append("\"id\":{\"type\":\"integer\",\"format\":\"int64\"},")
+                .append("\"name\":{\"type\":\"string\",\"maxLength\":64},")
+                .append("\"status\":{\"type\":\"string\",\"enum\":[\"available\",\"pending\",\"sold\"]},")
+                .append("\"tags\":{\"type\":\"array\",\"items\":{\"type\":\"string\"}}}}");
+        for (int depth = 0; depth < NESTED_DEPTH; depth++) {
+            schemas.append(",\"Node").append(depth).append("\":{\"type\":\"object\",\"required\":[\"level\"],\"properties\":{")
+                    .append("\"level\":{\"type\":\"integer\",\"minimum\":").append(depth).append("},")
+                    .append("\"label\":{\"type\":\"string\"}");
+            if (depth < NESTED_DEPTH - 1) {
+                schemas.append(",\"child\":{\"$ref\":\"#/components/schemas/Node").append(depth + 1).append("\"}");
+            }
+            schemas.append("}}");
+        }
+        for (int i = 0; i < fillerOperations; i++) {
+            schemas.append(",\"Filler").append(i).append("\":{\"type\":\"object\",\"properties\":{")
+                    .append("\"id\":{\"type\":\"integer\"},\"name\":{\"type\":\"string\"},")
+                    .append("\"pet\":{\"$ref\":\"#/components/schemas/Pet\"}}}");
+        }
+
+        return "{\"openapi\":\"3.0.0\",\"info\":{\"title\":\"Benchmark\",\"version\":\"1\"},"
+                + "\"paths\":{" + paths + "},"
+                + "\"components\":{\"schemas\":{" + schemas + "}}}";
+    }
+
+    /**
+     * Writes the definition to a temporary file, deleted on exit, for the options that only take a location.
+     */
+    static File specificationFile(final int fillerOperations) throws IOException {
+        final File file = File.createTempFile("benchmark-openapi-", ".json");
+        file.deleteOnExit();
+        Files.write(file.toPath(), specification(fillerOperations).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    static String body(final BodyShape shape) {
+        switch (shape) {
+            case LARGE:
+                final StringBuilder pets = new StringBuilder("[");
+                for (int i = 0; i < LARGE_ITEMS; i++) {
+                    pets.append(i == 0 ? "" : ",").append(pet(i));
+                }
+                return pets.append(']').toString();
+            case NESTED:
+                final StringBuilder node = new StringBuilder();
+                for (int depth = 0; depth < NESTED_DEPTH; depth++) {
+                    node.append("{\"level\":").append(depth).append(",\"label\":\"level ").append(depth).append('"');
+                    if (depth < NESTED_DEPTH - 1) {
+                        node.append(",\"child\":");
+                    }
+                }
+                for (int depth = 0; depth < NESTED_DEPTH; depth++) {
+                    node.append('}');
+                }
+                return node.toString();
+            default:
+                return pet(1);
+        }
+    }
+
+    static LoggedRequest request(final BodyShape shape) {
+        final String url = shape.path() + "/42?verbose=true&fields=id&fields=name";
+        return new LoggedRequest(url, "http://localhost:8080" + url, RequestMethod.POST, "127.0.0.1",
+                new HttpHeaders(
+                        new HttpHeader("Host", "localhost:8080"),
+                        new HttpHeader("Content-Type", "application/json"),
+                        new HttpHeader("Accept", "application/json, text/plain"),
+                        new HttpHeader("User-Agent", "benchmark"),
+                        new HttpHeader("X-Request-Id", "5f0c6a8e-3b1d-4c9e-9d1a-6f2b7c8d9e0f")),
+                Collections.emptyMap(), false, new Date(), body(shape).getBytes(StandardCharsets.UTF_8), null);
+    }
+
+    static Response response(final BodyShape shape) {
+        return Response.response()
+                .status(200)
+                .headers(new HttpHeaders(
+                        new HttpHeader("Content-Type", "application/json"),
+                        new HttpHeader("Cache-Control", "no-cache")))
+                .body(body(shape))
+                .build();
+    }
+
+    private static void appendOperation(final StringBuilder paths, final String path, final String schema) {
+        paths.append('"').append(path).append("/{id}\":{\"post\":{")
+                .append("\"parameters\":[{\"name\":\"id\",\"in\":\"path\",\"required\":true,\"schema\":{\"type\":\"integer\"}},")
+                .append("{\"name\":\"verbose\",\"in\":\"query\",\"schema\":{\"type\":\"boolean\"}},")
+                .append("{\"name\":\"fields\",\"in\":\"query\",\"schema\":{\"type\":\"array\",\"items\":{\"type\":\"string\"}}}],")
+                .append("\"requestBody\":{\"required\":true,\"content\":{\"application/json\":{\"schema\":").append(schema).append("}}},")
+                .append("\"responses\":{\"200\":{\"description\":\"ok\",\"content\":{\"application/json\":{\"schema\":").append(schema).append("}}}}}}");
+    }
+
+    private static String pet(final int id) {
+        return "{\"id\":" + id + ",\"name\":\"pet " + id + "\",\"status\":\"available\",\"tags\":[\"dog\",\"good\"]}";
+    }
+}
@@ -0,0 +1,55 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.http.Response;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link OpenApiValidationListener#requestReceived} as WireMock calls it: routing, adapting, validating and
+ * recording statistics, with default options.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListenerBenchmark {
+
+    @Param({"SMALL", "LARGE", "NESTED"})
+    public String body;
+
+    @Param({"0", "100", "1000"})
+    public int fillerOperations;
+
+    private OpenApiValidationListener listener;
+    private LoggedRequest request;
+    private Response response;
+
+    @Setup
+    public void setUp() throws IOException {
+        final String specification = BenchmarkFixtures.specificationFile(fillerOperations).getPath();
+        listener = new OpenApiValidationListener(new CommandLineOptions("--openapi-file=" + specification));
+        final BenchmarkFixtures.BodyShape shape = BenchmarkFixtures.BodyShape.valueOf(body);
+        request = BenchmarkFixtures.request(shape);
+        response = BenchmarkFixtures.response(shape);
+    }
+
+    @TearDown
+    public void tearDown() {
+        listener.stop();
+    }
+
+    @Benchmark
+    public void requestReceived() {
+        listener.requestReceived(request, response);
+    }
+}
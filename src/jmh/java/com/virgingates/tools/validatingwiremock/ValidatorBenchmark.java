@@ -0,0 +1,53 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.OpenApiInteractionValidator;
+import com.atlassian.oai.validator.report.ValidationReport;
+import com.github.tomakehurst.wiremock.http.Response;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link OpenApiInteractionValidator#validate} alone, for each body shape against definitions of growing
+ * size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ValidatorBenchmark {
+
+    @Param({"SMALL", "LARGE", "NESTED"})
+    public String body;
+
+    @Param({"0", "100", "1000"})
+    public int fillerOperations;
+
+    private OpenApiInteractionValidator validator;
+    private LoggedRequest request;
+    private Response response;
+
+    @Setup
+    public void setUp() {
+        validator = OpenApiSpecification.load(BenchmarkFixtures.specification(fillerOperations), "").validator();
+        final BenchmarkFixtures.BodyShape shape = BenchmarkFixtures.BodyShape.valueOf(body);
+        request = BenchmarkFixtures.request(shape);
+        response = BenchmarkFixtures.response(shape);
+        final ValidationReport report = validate();
+        if (report.hasErrors()) {
+            throw new IllegalStateException("The benchmark interaction is invalid: " + report);
+        }
+    }
+
+    @Benchmark
+    public ValidationReport validate() {
+        return validator.validate(WireMockRequest.of(request), WireMockResponse.of(response));
+    }
+}
@@ -0,0 +1,126 @@
+package com.virgingates.tools.validatingwiremock;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Drives closed-loop load at a server: each worker sends its next request as soon as the previous one is answered.
+ * The traffic mix is three {@code GET /pets/{petId}} for every {@code POST /pets}. Latencies are recorded in
+ * microseconds; those measured during warm-up are discarded.
+ */
+class LoadGenerator {
+
+    private static final String NEW_PET = "{\"name\":\"Tom\",\"status\":\"pending\",\"tags\":[\"cat\"]}";
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final HttpClient client;
+    private final int concurrency;
+
+    LoadGenerator(final int concurrency) {
+        this.concurrency = concurrency;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+    }
+
+    Result run(final String baseUrl, final Duration warmup, final Duration duration) throws InterruptedException {
+        final Recorder latencies = new Recorder(HIGHEST_TRACKABLE_MICROS, 3);
+        final LongAdder errors = new LongAdder();
+        final long measureFrom = System.nanoTime() + warmup.toNanos();
+        final long stopAt = measureFrom + duration.toNanos();
+
+        final List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < concurrency; i++) {
+            final int worker = i;
+            final Thread thread = new Thread(() -> work(baseUrl, worker, measureFrom, stopAt, latencies, errors),
+                    "load-generator-" + i);
+            workers.add(thread);
+            thread.start();
+        }
+
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, measureFrom - System.nanoTime()));
+        latencies.getIntervalHistogram(); // discard warm-up
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        return new Result(latencies.getIntervalHistogram(), errors.sum(), duration);
+    }
+
+    private void work(final String baseUrl, final int worker, final long measureFrom, final long stopAt,
+                      final Recorder latencies, final LongAdder errors) {
+        long sent = worker;
+        while (System.nanoTime() < stopAt) {
+            final HttpRequest request = sent++ % 4 == 3
+                    ? HttpRequest.newBuilder(URI.create(baseUrl + "/pets"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(NEW_PET))
+                            .build()
+                    : HttpRequest.newBuilder(URI.create(baseUrl + "/pets/" + (sent % 100 + 1))).GET().build();
+            final long start = System.nanoTime();
+            boolean failed;
+            try {
+                final HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                failed = response.statusCode() >= 300;
+            } catch (final IOException e) {
+                failed = true;
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            final long end = System.nanoTime();
+            if (start >= measureFrom) {
+                latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(end - start), HIGHEST_TRACKABLE_MICROS));
+                if (failed) {
+                    errors.increment();
+                }
+            }
+        }
+    }
+
+    static class Result {
+        private final Histogram latencies;
+        private final long errors;
+        private final Duration duration;
+
+        private Result(final Histogram latencies, final long errors, final Duration duration) {
+            this.latencies = latencies;
+            this.errors = errors;
+            this.duration = duration;
+        }
+
+        long requests() {
+            return latencies.getTotalCount();
+        }
+
+        long errors() {
+            return errors;
+        }
+
+        double requestsPerSecond() {
+            return requests() / (duration.toMillis() / 1000.0);
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         */
+        double percentileMillis(final double percentile) {
+            return latencies.getValueAtPercentile(percentile) / 1000.0;
+        }
+
+        double maxMillis() {
+            return latencies.getMaxValue() / 1000.0;
+        }
+    }
+}
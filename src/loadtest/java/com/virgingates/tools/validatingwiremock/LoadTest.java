@@ -0,0 +1,161 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static java.lang.System.out;
+
+/**
+ * Measures what OpenAPI validation costs in latency and throughput, so that containers can be sized from numbers.
+ * <p>
+ * For each mode, serving stubs ({@code stub}) and proxying to a local {@link StubUpstream} with {@code --proxy-all}
+ * ({@code proxy}), a {@link WireMockServerRunner} is started in-process with and then without {@code --openapi-file}
+ * against the bundled pet store definition, and put under the same closed-loop load. Arguments not listed below are
+ * passed on to the runner, e.g. {@code --container-threads=50} or {@code --openapi-validation-mode=async}.
+ */
+public class LoadTest {
+
+    private static final String CONCURRENCY = "concurrency";
+    private static final String WARMUP = "warmup";
+    private static final String DURATION = "duration";
+    private static final String MODES = "modes";
+    private static final String RESULTS_FILE = "results-file";
+    private static final String HELP = "help";
+
+    private static final String STUB_MODE = "stub";
+    private static final String PROXY_MODE = "proxy";
+
+    public static void main(final String... args) throws Exception {
+        final OptionParser optionParser = new OptionParser();
+        optionParser.allowsUnrecognizedOptions();
+        optionParser.accepts(CONCURRENCY, "Number of concurrent clients").withRequiredArg().defaultsTo("16");
+        optionParser.accepts(WARMUP, "Warm-up time per run, in seconds").withRequiredArg().defaultsTo("10");
+        optionParser.accepts(DURATION, "Measured time per run, in seconds").withRequiredArg().defaultsTo("30");
+        optionParser.accepts(MODES, "Comma separated modes to measure: stub and/or proxy").withRequiredArg().defaultsTo(STUB_MODE + "," + PROXY_MODE);
+        optionParser.accepts(RESULTS_FILE, "Also write the results to this JSON file").withRequiredArg();
+        optionParser.accepts(HELP, "Print this message");
+        final OptionSet options = optionParser.parse(args);
+        if (options.has(HELP)) {
+            optionParser.printHelpOn(out);
+            return;
+        }
+
+        final int concurrency = Integer.parseInt((String) options.valueOf(CONCURRENCY));
+        final Duration warmup = Duration.ofSeconds(Long.parseLong((String) options.valueOf(WARMUP)));
+        final Duration duration = Duration.ofSeconds(Long.parseLong((String) options.valueOf(DURATION)));
+        final List<String> modes = Arrays.asList(((String) options.valueOf(MODES)).split(","));
+        final List<String> runnerArgs = new ArrayList<>();
+        options.nonOptionArguments().forEach(arg -> runnerArgs.add(String.valueOf(arg)));
+
+        final Path workDir = Files.createTempDirectory("validating-wiremock-loadtest");
+        final Path specification = copyResource("petstore.yaml", workDir);
+        final Path stubRoot = Files.createDirectories(workDir.resolve("stub"));
+        copyResource("mappings/get-pet.json", stubRoot);
+        copyResource("mappings/create-pet.json", stubRoot);
+        final Path proxyRoot = Files.createDirectories(workDir.resolve("proxy"));
+
+        final StubUpstream upstream = StubUpstream.start(Math.max(concurrency, 8));
+        final LoadGenerator loadGenerator = new LoadGenerator(concurrency);
+        final List<Map<String, Object>> results = new ArrayList<>();
+        try {
+            for (final String mode : modes) {
+                for (final boolean validation : new boolean[]{false, true}) {
+                    final List<String> runArgs = new ArrayList<>(runnerArgs);
+                    runArgs.add("--port=0");
+                    runArgs.add("--disable-banner");
+                    if (PROXY_MODE.equals(mode)) {
+                        runArgs.add("--root-dir=" + proxyRoot);
+                        runArgs.add("--proxy-all=" + upstream.baseUrl());
+                    } else {
+                        runArgs.add("--root-dir=" + stubRoot);
+                    }
+                    if (validation) {
+                        runArgs.add("--openapi-file=" + specification);
+                    }
+                    results.add(measure(mode, validation, runArgs, loadGenerator, warmup, duration));
+                }
+            }
+        } finally {
+            upstream.stop();
+        }
+
+        out.println();
+        out.println(String.format("Load test: %d clients, %ds warm-up, %ds measured per run, runner args %s",
+                concurrency, warmup.getSeconds(), duration.getSeconds(), runnerArgs));
+        out.println(String.format("%-6s %-10s %10s %10s %9s %9s %9s %9s %9s %7s",
+                "mode", "validation", "requests", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "errors"));
+        for (final Map<String, Object> result : results) {
+            out.println(String.format("%-6s %-10s %10d %10.0f %9.2f %9.2f %9.2f %9.2f %9.2f %7d",
+                    result.get("mode"), (boolean) result.get("validation") ? "on" : "off", result.get("requests"),
+                    result.get("requestsPerSecond"), result.get("p50Millis"), result.get("p90Millis"),
+                    result.get("p99Millis"), result.get("p999Millis"), result.get("maxMillis"), result.get("errors")));
+        }
+        for (int i = 0; i + 1 < results.size(); i += 2) {
+            final Map<String, Object> off = results.get(i);
+            final Map<String, Object> on = results.get(i + 1);
+            out.println(String.format("%s: validation costs %+.2f ms at p50, %+.2f ms at p99 and %.1f%% of throughput",
+                    off.get("mode"),
+                    (double) on.get("p50Millis") - (double) off.get("p50Millis"),
+                    (double) on.get("p99Millis") - (double) off.get("p99Millis"),
+                    100 * (1 - (double) on.get("requestsPerSecond") / (double) off.get("requestsPerSecond"))));
+        }
+
+        if (options.has(RESULTS_FILE)) {
+            new ObjectMapper().writerWithDefaultPrettyPrinter()
+                    .writeValue(new File((String) options.valueOf(RESULTS_FILE)), results);
+        }
+    }
+
+    private static Map<String, Object> measure(final String mode, final boolean validation, final List<String> runArgs,
+                                               final LoadGenerator loadGenerator, final Duration warmup,
+                                               final Duration duration) throws InterruptedException {
+        out.println("Measuring " + mode + " mode with validation " + (validation ? "on" : "off") + "...");
+        final WireMockServerRunner runner = new WireMockServerRunner();
+        runner.run(runArgs.toArray(new String[0]));
+        final LoadGenerator.Result result;
+        try {
+            result = loadGenerator.run("http://localhost:" + runner.port(), warmup, duration);
+        } finally {
+            runner.stop();
+        }
+
+        final Map<String, Object> measurement = new LinkedHashMap<>();
+        measurement.put("mode", mode);
+        measurement.put("validation", validation);
+        measurement.put("requests", result.requests());
+        measurement.put("errors", result.errors());
+        measurement.put("requestsPerSecond", result.requestsPerSecond());
+        measurement.put("p50Millis", result.percentileMillis(50));
+        measurement.put("p90Millis", result.percentileMillis(90));
+        measurement.put("p99Millis", result.percentileMillis(99));
+        measurement.put("p999Millis", result.percentileMillis(99.9));
+        measurement.put("maxMillis", result.maxMillis());
+        return measurement;
+    }
+
+    private static Path copyResource(final String name, final Path directory) throws IOException {
+        final Path target = directory.resolve(name);
+        Files.createDirectories(target.getParent());
+        try (final InputStream resource = LoadTest.class.getResourceAsStream("/loadtest/" + name)) {
+            if (resource == null) {
+                throw new IOException("Missing load test resource " + name);
+            }
+            Files.copy(resource, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+        return target;
+    }
+}
@@ -0,0 +1,75 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A minimal stand-in for a real backend, serving the load test pet store on a local port for {@code --proxy-all}
+ * mode. It answers the same bodies as the stub mappings, so stub and proxy runs validate the same interactions.
+ */
+class StubUpstream {
+
+    private static final byte[] PET = "{\"id\":1,\"name\":\"Rex\",\"status\":\"available\",\"tags\":[\"dog\",\"good\"]}"
+            .getBytes(StandardCharsets.UTF_8);
+    private static final byte[] CREATED_PET = "{\"id\":2,\"name\":\"Tom\",\"status\":\"pending\",\"tags\":[\"cat\"]}"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    private StubUpstream(final HttpServer server, final ExecutorService executor) {
+        this.server = server;
+        this.executor = executor;
+    }
+
+    static StubUpstream start(final int threads) throws IOException {
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        server.setExecutor(executor);
+        server.createContext("/pets", StubUpstream::handle);
+        server.start();
+        return new StubUpstream(server, executor);
+    }
+
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private static void handle(final HttpExchange exchange) throws IOException {
+        try (final InputStream requestBody = exchange.getRequestBody()) {
+            while (requestBody.read() >= 0) {
+                // drain, so the connection can be reused
+            }
+        }
+        final String path = exchange.getRequestURI().getPath();
+        if ("GET".equals(exchange.getRequestMethod()) && path.matches("/pets/[0-9]+")) {
+            respond(exchange, 200, PET);
+        } else if ("POST".equals(exchange.getRequestMethod()) && "/pets".equals(path)) {
+            respond(exchange, 201, CREATED_PET);
+        } else {
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        }
+    }
+
+    private static void respond(final HttpExchange exchange, final int status, final byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (final OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(body);
+        }
+    }
+}
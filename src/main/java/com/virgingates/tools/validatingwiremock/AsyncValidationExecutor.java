@@ -0,0 +1,129 @@
+package com.virgingates.tools.validatingwiremock;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs validations on a dedicated worker pool behind a bounded queue, so that schema validation is taken off
+ * the container threads serving the response.
+ * <p>
+ * What happens when the queue is full is decided by the {@link OverflowPolicy}.
+ */
+class AsyncValidationExecutor {
+
+    enum OverflowPolicy {
+        /** Discard the validation and count it as dropped. */
+        DROP,
+        /** Block the container thread until the queue has room. */
+        BLOCK,
+        /** Validate on the container thread instead, as if validation were synchronous. */
+        SYNC;
+
+        static OverflowPolicy fromOption(final String value) {
+            try {
+                return valueOf(value.trim().toUpperCase());
+            } catch (final IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown validation overflow policy '" + value + "', expected one of drop, block or sync");
+            }
+        }
+    }
+
+    private static final String THREAD_NAME = "openapi-validation-";
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder ranInline = new LongAdder();
+
+    AsyncValidationExecutor(final int threads, final int queueSize, @Nonnull final OverflowPolicy overflowPolicy) {
+        this(threads, queueSize, overflowPolicy, false);
+    }
+
+    /**
+     * @param virtualThreads whether the workers are virtual threads, see {@link VirtualThreads}
+     */
+    AsyncValidationExecutor(final int threads, final int queueSize, @Nonnull final OverflowPolicy overflowPolicy,
+                            final boolean virtualThreads) {
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                virtualThreads ? VirtualThreads.factory(THREAD_NAME) : new ValidationThreadFactory(),
+                rejectionHandlerFor(overflowPolicy));
+        executor.prestartAllCoreThreads();
+    }
+
+    void submit(@Nonnull final Runnable validation) {
+        executor.execute(validation);
+    }
+
+    /**
+     * @return the number of validations discarded because the queue was full.
+     */
+    long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * @return the number of validations run on the container thread because the queue was full.
+     */
+    long ranInline() {
+        return ranInline.sum();
+    }
+
+    /**
+     * @return the number of validations currently waiting for a worker.
+     */
+    int queued() {
+        return executor.getQueue().size();
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Waits for the validations submitted before {@link #shutdown()} to finish.
+     */
+    void awaitTermination() throws InterruptedException {
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    private RejectedExecutionHandler rejectionHandlerFor(final OverflowPolicy overflowPolicy) {
+        switch (overflowPolicy) {
+            case BLOCK:
+                return (validation, pool) -> {
+                    if (pool.isShutdown()) {
+                        dropped.increment();
+                        return;
+                    }
+                    try {
+                        pool.getQueue().put(validation);
+                    } catch (final InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        dropped.increment();
+                    }
+                };
+            case SYNC:
+                return (validation, pool) -> {
+                    ranInline.increment();
+                    validation.run();
+                };
+            default:
+                return (validation, pool) -> dropped.increment();
+        }
+    }
+
+    private static class ValidationThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCount = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@Nonnull final Runnable runnable) {
+            final Thread thread = new Thread(runnable, THREAD_NAME + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
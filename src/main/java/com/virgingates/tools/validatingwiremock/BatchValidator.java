@@ -0,0 +1,356 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.report.ValidationReport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.Json;
+import com.github.tomakehurst.wiremock.common.SingleRootFileSource;
+import com.github.tomakehurst.wiremock.http.HttpHeaders;
+import com.github.tomakehurst.wiremock.http.LoggedResponse;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.Response;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.github.tomakehurst.wiremock.stubbing.StubMappingCollection;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import wiremock.com.fasterxml.jackson.core.JsonParser;
+import wiremock.com.fasterxml.jackson.core.JsonToken;
+import wiremock.com.fasterxml.jackson.databind.JsonNode;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+
+import static com.github.tomakehurst.wiremock.core.WireMockApp.FILES_ROOT;
+import static com.github.tomakehurst.wiremock.core.WireMockApp.MAPPINGS_ROOT;
+
+/**
+ * Validates recorded traffic against the OpenApi definitions offline, without starting WireMock: either a request
+ * journal export (the JSON served by {@code GET /__admin/requests}, optionally gzipped) or a directory of recorded
+ * stub mappings.
+ * <p>
+ * The input is streamed: journal entries are parsed one at a time and mapping files listed lazily, and each is handed
+ * to a pool of validation workers behind a small bounded queue, so the reader waits for the workers rather than
+ * getting ahead of them and memory use does not grow with the size of the input. Only the aggregated statistics and
+ * the journal of distinct violations are kept.
+ * <p>
+ * Journal entries are validated as a whole, like the listener does. Recorded stubs only have their response
+ * validated, and only those {@link VerifiedStubs} could verify, since their request is a pattern, not a request.
+ * Entries that cannot be read are counted as unreadable, and interactions the validator throws on as validator errors.
+ * Should a journal export end early or stop being valid JSON, the entries up to that point are still validated and the
+ * report is flagged as truncated.
+ */
+class BatchValidator {
+
+    private static final int QUEUED_PER_THREAD = 4;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final SpecRouter router;
+    private final BodyPolicy bodyPolicy;
+    private final ViolationJournal violations;
+    private final int threads;
+    private final ValidationStatistics statistics = new ValidationStatistics();
+    private final LongAdder notRouted = new LongAdder();
+    private final LongAdder notValidatable = new LongAdder();
+    private final LongAdder unreadable = new LongAdder();
+    private final LongAdder validatorErrors = new LongAdder();
+    private String truncation;
+
+    /**
+     * @param violations where to keep the distinct violations, may be {@code null}
+     * @param threads    the number of validation workers
+     */
+    BatchValidator(@Nonnull final SpecRouter router, @Nonnull final BodyPolicy bodyPolicy,
+                   final ViolationJournal violations, final int threads) {
+        this.router = router;
+        this.bodyPolicy = bodyPolicy;
+        this.violations = violations;
+        this.threads = threads;
+    }
+
+    /**
+     * Validates every interaction of the input.
+     *
+     * @param input a request journal export, or a mappings directory (or the root directory holding one)
+     * @return the report, for JSON output.
+     */
+    @Nonnull
+    Map<String, Object> validate(@Nonnull final Path input) throws IOException {
+        final long start = System.nanoTime();
+        final AsyncValidationExecutor executor = new AsyncValidationExecutor(threads, threads * QUEUED_PER_THREAD,
+                AsyncValidationExecutor.OverflowPolicy.BLOCK);
+        try {
+            if (Files.isDirectory(input)) {
+                validateMappings(input, executor);
+            } else {
+                validateJournal(input, executor);
+            }
+        } finally {
+            executor.shutdown();
+            try {
+                executor.awaitTermination();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while validating " + input);
+            }
+        }
+        return report(input, System.nanoTime() - start);
+    }
+
+    private void validateJournal(final Path file, final AsyncValidationExecutor executor) throws IOException {
+        final wiremock.com.fasterxml.jackson.databind.ObjectMapper mapper = Json.getObjectMapper();
+        try (InputStream in = open(file); JsonParser parser = mapper.getFactory().createParser(in)) {
+            if (!skipToServeEvents(parser)) {
+                throw new IOException(file + " is not a request journal export");
+            }
+            while (true) {
+                // a syntax error or the end of the input ends the read, the entries read so far still count
+                final JsonNode entry;
+                try {
+                    final JsonToken token = parser.nextToken();
+                    if (token == JsonToken.END_ARRAY) {
+                        return;
+                    }
+                    if (token == null) {
+                        truncation = "Unexpected end of input";
+                        return;
+                    }
+                    entry = parser.readValueAsTree();
+                } catch (final IOException e) {
+                    truncation = e.getMessage();
+                    return;
+                }
+                // a well-formed entry that is not a serve event only costs itself
+                final ServeEvent event;
+                try {
+                    event = mapper.treeToValue(entry, ServeEvent.class);
+                } catch (final IOException | RuntimeException e) {
+                    unreadable.increment();
+                    continue;
+                }
+                executor.submit(() -> validate(event));
+            }
+        }
+    }
+
+    private static InputStream open(final Path file) throws IOException {
+        final InputStream in = new BufferedInputStream(Files.newInputStream(file), BUFFER_SIZE);
+        return file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(in, BUFFER_SIZE) : in;
+    }
+
+    /**
+     * Moves the parser to the start of the array of serve events: either the {@code requests} of an export, or the
+     * whole document if it is an array.
+     */
+    private static boolean skipToServeEvents(final JsonParser parser) throws IOException {
+        final JsonToken first = parser.nextToken();
+        if (first == JsonToken.START_ARRAY) {
+            return true;
+        }
+        if (first != JsonToken.START_OBJECT) {
+            return false;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String name = parser.getCurrentName();
+            if (parser.nextToken() == JsonToken.START_ARRAY && ("requests".equals(name) || "serveEvents".equals(name))) {
+                return true;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    private void validate(final ServeEvent event) {
+        try {
+            final LoggedRequest request = event.getRequest();
+            // OPTIONS are not validated by the listener either
+            if (request == null || request.getMethod().equals(RequestMethod.OPTIONS)) {
+                notValidatable.increment();
+                return;
+            }
+            final OpenApiSpecification specification = router.route(SpecRouter.hostOf(request), request.getUrl());
+            if (specification == null) {
+                notRouted.increment();
+                return;
+            }
+            final long start = System.nanoTime();
+            final WireMockRequest validatorRequest = WireMockRequest.of(request, bodyPolicy);
+            final String operation = specification.operationFor(request.getUrl(), validatorRequest.getMethod());
+            final LoggedResponse loggedResponse = event.getResponse();
+            final WireMockResponse validatorResponse = loggedResponse == null || loggedResponse.getFault() != null
+                    ? null : WireMockResponse.of(responseOf(loggedResponse), bodyPolicy);
+            final ValidationReport report;
+            try {
+                if (validatorResponse == null) {
+                    report = bodyPolicy.withoutSkippedBodies(specification.validator().validateRequest(validatorRequest),
+                            validatorRequest.isBodySkipped(), false);
+                } else {
+                    report = bodyPolicy.withoutSkippedBodies(specification.validator().validate(validatorRequest, validatorResponse),
+                            validatorRequest.isBodySkipped(), validatorResponse.isBodySkipped());
+                }
+            } catch (final RuntimeException e) {
+                validatorErrors.increment();
+                return;
+            }
+            final long conversionNanos = validatorRequest.conversionNanos()
+                    + (validatorResponse == null ? 0 : validatorResponse.conversionNanos());
+            record(operation, report, conversionNanos, start);
+        } catch (final RuntimeException e) {
+            unreadable.increment();
+        }
+    }
+
+    private static Response responseOf(final LoggedResponse response) {
+        return Response.response()
+                .status(response.getStatus())
+                .headers(response.getHeaders() == null ? new HttpHeaders() : response.getHeaders())
+                .body(response.getBody() == null ? new byte[0] : response.getBody())
+                .build();
+    }
+
+    private void validateMappings(final Path directory, final AsyncValidationExecutor executor) throws IOException {
+        final Path mappings = Files.isDirectory(directory.resolve(MAPPINGS_ROOT)) ? directory.resolve(MAPPINGS_ROOT) : directory;
+        final FileSource files = new SingleRootFileSource(mappings.resolveSibling(FILES_ROOT).toFile());
+        try (Stream<Path> paths = Files.walk(mappings)) {
+            final Iterator<Path> mappingFiles = paths
+                    .filter(path -> path.getFileName().toString().endsWith(".json") && Files.isRegularFile(path))
+                    .iterator();
+            while (mappingFiles.hasNext()) {
+                final Path file = mappingFiles.next();
+                executor.submit(() -> validateMappingFile(file, files));
+            }
+        }
+    }
+
+    private void validateMappingFile(final Path file, final FileSource files) {
+        final StubMappingCollection collection;
+        try {
+            collection = Json.read(new String(Files.readAllBytes(file), StandardCharsets.UTF_8), StubMappingCollection.class);
+        } catch (final IOException | RuntimeException e) {
+            unreadable.increment();
+            return;
+        }
+        for (final StubMapping stub : collection.getMappingOrMappings()) {
+            validate(stub, files);
+        }
+    }
+
+    private void validate(final StubMapping stub, final FileSource files) {
+        if (VerifiedStubs.whyNotVerifiable(stub) != null) {
+            notValidatable.increment();
+            return;
+        }
+        final String url = stub.getRequest().getUrl() != null ? stub.getRequest().getUrl() : stub.getRequest().getUrlPath();
+        final OpenApiSpecification specification = router.route(VerifiedStubs.hostOf(stub.getRequest()), url);
+        if (specification == null) {
+            notRouted.increment();
+            return;
+        }
+        final long start = System.nanoTime();
+        final WireMockResponse validatorResponse;
+        try {
+            validatorResponse = WireMockResponse.of(VerifiedStubs.stubbedResponse(stub.getResponse(), files), bodyPolicy);
+        } catch (final RuntimeException e) {
+            unreadable.increment();
+            return;
+        }
+        final String path = WireMockRequest.pathOf(url);
+        final com.atlassian.oai.validator.model.Request.Method method =
+                com.atlassian.oai.validator.model.Request.Method.valueOf(stub.getRequest().getMethod().getName());
+        final ValidationReport report;
+        try {
+            report = bodyPolicy.withoutSkippedBodies(specification.validator().validateResponse(path, method, validatorResponse),
+                    false, validatorResponse.isBodySkipped());
+        } catch (final RuntimeException e) {
+            validatorErrors.increment();
+            return;
+        }
+        record(specification.operationFor(path, method), report, validatorResponse.conversionNanos(), start);
+    }
+
+    private void record(final String operation, final ValidationReport report, final long conversionNanos, final long start) {
+        statistics.record(operation, report, conversionNanos, System.nanoTime() - start - conversionNanos);
+        if (violations != null) {
+            violations.record(operation, report);
+        }
+    }
+
+    private Map<String, Object> report(final Path input, final long elapsedNanos) {
+        final Map<String, Long> validatedByOperation = statistics.validatedByOperation();
+        final Map<String, Long> failedByOperation = statistics.failedByOperation();
+        final Map<String, ValidationStatistics.Latencies> validationTimes = statistics.validationTimeByOperation();
+        final Map<String, Object> operations = new TreeMap<>();
+        validatedByOperation.forEach((operation, validated) -> {
+            final Map<String, Object> operationReport = new LinkedHashMap<>();
+            operationReport.put("validated", validated);
+            operationReport.put("failed", failedByOperation.getOrDefault(operation, 0L));
+            operationReport.put("validationTime", validationTimes.get(operation).summary());
+            operations.put(operation, operationReport);
+        });
+
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("input", input.toString());
+        report.put("threads", threads);
+        report.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+        report.put("validated", validatedByOperation.values().stream().mapToLong(Long::longValue).sum());
+        report.put("failed", failed());
+        report.put("notRouted", notRouted.sum());
+        report.put("notValidatable", notValidatable.sum());
+        report.put("unreadable", unreadable.sum());
+        report.put("validatorErrors", validatorErrors.sum());
+        report.put("truncated", truncation != null);
+        if (truncation != null) {
+            report.put("truncation", truncation);
+        }
+        report.put("bodiesSkipped", bodyPolicy.skippedBodies());
+        report.put("operations", operations);
+        report.put("messages", statistics.messagesByKey());
+        if (violations != null) {
+            report.put("violations", violations.page(0, Integer.MAX_VALUE).get("violations"));
+        }
+        return report;
+    }
+
+    /**
+     * @return the number of interactions that failed validation so far.
+     */
+    long failed() {
+        return statistics.failedByOperation().values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    /**
+     * @return whether the input ended early or stopped being valid JSON, so that the interactions after that point
+     * were not validated.
+     */
+    boolean truncated() {
+        return truncation != null;
+    }
+
+    /**
+     * @return the number of interactions the validator failed on, rather than reporting on, so far.
+     */
+    long validatorErrors() {
+        return validatorErrors.sum();
+    }
+
+    /**
+     * Writes a report, as returned by {@link #validate}, as JSON.
+     */
+    static void writeReport(@Nonnull final Map<String, Object> report, @Nonnull final File file) throws IOException {
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, report);
+    }
+}
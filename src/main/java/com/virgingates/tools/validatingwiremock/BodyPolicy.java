@@ -0,0 +1,167 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.report.ValidationReport;
+import com.github.tomakehurst.wiremock.http.ContentTypeHeader;
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.Response;
+import com.google.common.io.ByteStreams;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Decides which bodies are worth validating and reads them without materializing more than that on-heap.
+ * <p>
+ * Bodies larger than the maximum validated size, if any, or whose content type is one of the skipped ones, are not
+ * decoded at all and are left out of validation; the "body missing" messages this would otherwise cause are filtered
+ * out of the report. The size of a response body is taken from its {@code Content-Length} header
+ * when present, and its stream is otherwise read only up to the maximum size, so large file-backed responses are never
+ * loaded whole just for validation.
+ */
+class BodyPolicy {
+
+    /**
+     * Content types skipped when none are given on the command line.
+     */
+    static final List<String> BINARY_CONTENT_TYPES = Collections.unmodifiableList(Arrays.asList(
+            "application/octet-stream", "application/pdf", "application/zip", "application/gzip",
+            "image/*", "audio/*", "video/*"));
+
+    static final BodyPolicy VALIDATE_ALL = new BodyPolicy(-1, Collections.emptyList());
+
+    /**
+     * Returned in place of a body that is left out of validation.
+     */
+    private static final byte[] SKIPPED = new byte[0];
+
+    private static final String REQUEST_BODY_MISSING = "validation.request.body.missing";
+    private static final String RESPONSE_BODY_MISSING = "validation.response.body.missing";
+
+    private final long maxBodySize;
+    private final List<String> skippedContentTypes;
+    private final LongAdder skippedBodies = new LongAdder();
+
+    /**
+     * @param maxBodySize         the largest body validated, in bytes, or a negative value for no limit
+     * @param skippedContentTypes the content types whose bodies are not validated, such as {@code image/png} or
+     *                            {@code image/*}
+     */
+    BodyPolicy(final long maxBodySize, @Nonnull final Collection<String> skippedContentTypes) {
+        this.maxBodySize = maxBodySize;
+        this.skippedContentTypes = new ArrayList<>();
+        skippedContentTypes.forEach(contentType -> this.skippedContentTypes.add(contentType.trim().toLowerCase(Locale.ROOT)));
+    }
+
+    /**
+     * @return the request body, {@code null} if there is none, or a value for which {@link #isSkipped(byte[])} holds if
+     * it is not to be validated.
+     */
+    byte[] requestBody(@Nonnull final Request request) {
+        final byte[] body = request.getBody();
+        if (body == null || body.length == 0) {
+            return body;
+        }
+        if (skips(request.contentTypeHeader(), body.length)) {
+            return skip();
+        }
+        return body;
+    }
+
+    /**
+     * @return the response body, {@code null} if there is none, or a value for which {@link #isSkipped(byte[])} holds if
+     * it is not to be validated.
+     */
+    byte[] responseBody(@Nonnull final Response response) {
+        final ContentTypeHeader contentType = response.getHeaders().getContentTypeHeader();
+        if (skips(contentType, contentLength(response.getHeaders().getHeader("Content-Length")))) {
+            return skip();
+        }
+        if (maxBodySize < 0) {
+            return response.getBody();
+        }
+        try (final InputStream stream = response.getBodyStream()) {
+            if (stream == null) {
+                return null;
+            }
+            final byte[] body = ByteStreams.toByteArray(ByteStreams.limit(stream, maxBodySize + 1));
+            if (body.length > maxBodySize) {
+                return skip();
+            }
+            return body;
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static boolean isSkipped(final byte[] body) {
+        return body == SKIPPED;
+    }
+
+    private byte[] skip() {
+        skippedBodies.increment();
+        return SKIPPED;
+    }
+
+    /**
+     * Removes the "body missing" messages caused by skipping a body.
+     */
+    @Nonnull
+    ValidationReport withoutSkippedBodies(@Nonnull final ValidationReport report,
+                                          final boolean requestBodySkipped, final boolean responseBodySkipped) {
+        if (!requestBodySkipped && !responseBodySkipped) {
+            return report;
+        }
+        return ValidationReport.from(report.getMessages().stream()
+                .filter(message -> !(requestBodySkipped && REQUEST_BODY_MISSING.equals(message.getKey())))
+                .filter(message -> !(responseBodySkipped && RESPONSE_BODY_MISSING.equals(message.getKey())))
+                .collect(Collectors.toList()));
+    }
+
+    /**
+     * @return the number of bodies left out of validation so far.
+     */
+    long skippedBodies() {
+        return skippedBodies.sum();
+    }
+
+    private boolean skips(final ContentTypeHeader contentType, final long length) {
+        return (maxBodySize >= 0 && length > maxBodySize) || isSkippedContentType(contentType);
+    }
+
+    private boolean isSkippedContentType(final ContentTypeHeader contentType) {
+        if (skippedContentTypes.isEmpty() || contentType == null || !contentType.isPresent()) {
+            return false;
+        }
+        final String mimeType = contentType.mimeTypePart().trim().toLowerCase(Locale.ROOT);
+        for (final String skipped : skippedContentTypes) {
+            if (skipped.endsWith("/*")
+                    ? mimeType.startsWith(skipped.substring(0, skipped.length() - 1))
+                    : mimeType.equals(skipped)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long contentLength(final HttpHeader header) {
+        if (header == null || !header.isPresent()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(header.firstValue().trim());
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -17,9 +17,7 @@ import com.github.tomakehurst.wiremock.jetty9.QueuedThreadPoolFactory;
 import com.github.tomakehurst.wiremock.security.Authenticator;
 import com.github.tomakehurst.wiremock.security.BasicAuthenticator;
 import com.github.tomakehurst.wiremock.security.NoAuthenticator;
-import com.github.tomakehurst.wiremock.standalone.JsonFileMappingsSource;
 import com.github.tomakehurst.wiremock.standalone.MappingsLoader;
-import com.github.tomakehurst.wiremock.standalone.MappingsSource;
 import com.github.tomakehurst.wiremock.verification.notmatched.NotMatchedRenderer;
 import com.github.tomakehurst.wiremock.verification.notmatched.PlainTextStubNotMatchedRenderer;
 import com.google.common.base.Optional;
@@ -28,13 +26,19 @@ import com.google.common.collect.*;
 import com.google.common.io.Resources;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
+import joptsimple.OptionSpec;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.StringWriter;
 import java.net.URI;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.github.tomakehurst.wiremock.common.Exceptions.throwUnchecked;
 import static com.github.tomakehurst.wiremock.common.ProxySettings.NO_PROXY;
@@ -80,16 +84,74 @@ public class CommandLineOptions extends com.github.tomakehurst.wiremock.standalo
     private static final String ASYNCHRONOUS_RESPONSE_THREADS = "async-response-threads";
 
     private static final String OPENAPI_FILE = "openapi-file";
+    private static final String OPENAPI_VALIDATION_MODE = "openapi-validation-mode";
+    private static final String OPENAPI_VALIDATION_THREADS = "openapi-validation-threads";
+    private static final String OPENAPI_VALIDATION_QUEUE_SIZE = "openapi-validation-queue-size";
+    private static final String OPENAPI_VALIDATION_OVERFLOW = "openapi-validation-overflow";
+    private static final String OPENAPI_VALIDATION_CACHE_SIZE = "openapi-validation-cache-size";
+    private static final String OPENAPI_WATCH = "openapi-watch";
+    private static final String OPENAPI_SAMPLE_RATE = "openapi-sample-rate";
+    private static final String OPENAPI_OPERATION_SAMPLE_RATE = "openapi-operation-sample-rate";
+    private static final String OPENAPI_ALWAYS_VALIDATE_FIRST = "openapi-always-validate-first";
+    private static final String OPENAPI_MAX_BODY_SIZE = "openapi-max-body-size";
+    private static final String OPENAPI_SKIP_BODY_CONTENT_TYPE = "openapi-skip-body-content-type";
+    private static final String OPENAPI_SPEC_CACHE_DIR = "openapi-spec-cache-dir";
+    private static final String OPENAPI_VERIFY_STUBS = "openapi-verify-stubs";
+    private static final String OPENAPI_VERIFY_STUBS_REPORT = "openapi-verify-stubs-report";
+    private static final String OPENAPI_VIOLATION_JOURNAL_SIZE = "openapi-violation-journal-size";
+    private static final String OPENAPI_BATCH_VALIDATE = "openapi-batch-validate";
+    private static final String OPENAPI_BATCH_REPORT = "openapi-batch-report";
+    private static final String OPENAPI_BATCH_THREADS = "openapi-batch-threads";
+    private static final String MAPPINGS_INDEX = "mappings-index";
+    private static final String WATCH_MAPPINGS = "watch-mappings";
+    private static final String REQUEST_JOURNAL_MAX_BYTES = "request-journal-max-bytes";
+    private static final String REQUEST_JOURNAL_FILE = "request-journal-file";
+    private static final String VIRTUAL_THREADS = "virtual-threads";
+    private static final String TEMPLATE_CACHE_SIZE = "template-cache-size";
+    private static final String PROXY_MAX_CONNECTIONS = "proxy-max-connections";
+    private static final String PROXY_MAX_CONNECTIONS_PER_HOST = "proxy-max-connections-per-host";
+    private static final String PROXY_KEEP_ALIVE = "proxy-keep-alive";
+    private static final String PROXY_CONNECT_TIMEOUT = "proxy-connect-timeout";
+    private static final String PROXY_TIMEOUT = "proxy-timeout";
+    private static final String PROXY_POOL_TIMEOUT = "proxy-pool-timeout";
+    private static final String PROXY_HTTP2 = "proxy-http2";
+    private static final String PROXY_HTTP2_INSECURE = "proxy-http2-insecure";
+    private static final Set<String> PROXY_CLIENT_OPTIONS = ImmutableSet.of(PROXY_MAX_CONNECTIONS,
+            PROXY_MAX_CONNECTIONS_PER_HOST, PROXY_KEEP_ALIVE, PROXY_CONNECT_TIMEOUT, PROXY_TIMEOUT, PROXY_POOL_TIMEOUT, PROXY_HTTP2,
+            PROXY_HTTP2_INSECURE);
+    private static final Set<String> OWN_OPTIONS = ImmutableSet.<String>builder()
+            .add(HELP, MAPPINGS_INDEX, WATCH_MAPPINGS, REQUEST_JOURNAL_MAX_BYTES, REQUEST_JOURNAL_FILE, VIRTUAL_THREADS, TEMPLATE_CACHE_SIZE)
+            .addAll(PROXY_CLIENT_OPTIONS)
+            .build();
+
+    private static final String SYNC_VALIDATION_MODE = "sync";
+    private static final String ASYNC_VALIDATION_MODE = "async";
 
 
     private final OptionSet optionSet;
     private final FileSource fileSource;
-    private final MappingsSource mappingsSource;
+    private final ParallelMappingsSource mappingsSource;
 
     private String helpText;
+    private String requestJournalFile;
     private Optional<Integer> resultingPort;
+    private final Map<String, Extension> extensions = new LinkedHashMap<>();
 
     public CommandLineOptions(String... args) {
+        super(wireMockArgs(args));
+        OptionParser optionParser = optionParser();
+        optionSet = optionParser.parse(args);
+        validate();
+        captureHelpTextIfRequested(optionParser);
+
+        fileSource = new SingleRootFileSource((String) optionSet.valueOf(ROOT_DIR));
+        mappingsSource = new ParallelMappingsSource(fileSource.child(MAPPINGS_ROOT),
+                optionSet.has(MAPPINGS_INDEX) ? Paths.get((String) optionSet.valueOf(MAPPINGS_INDEX)) : null, notifier());
+
+        resultingPort = Optional.absent();
+    }
+
+    private static OptionParser optionParser() {
         OptionParser optionParser = new OptionParser();
         optionParser.accepts(PORT, "The port number for the server to listen on (default: 8080). 0 for dynamic port selection.").withRequiredArg();
         optionParser.accepts(HTTPS_PORT, "If this option is present WireMock will enable HTTPS on the specified port").withRequiredArg();
@@ -119,23 +181,71 @@ public class CommandLineOptions extends com.github.tomakehurst.wiremock.standalo
         optionParser.accepts(PRINT_ALL_NETWORK_TRAFFIC, "Print all raw incoming and outgoing network traffic to console");
         optionParser.accepts(GLOBAL_RESPONSE_TEMPLATING, "Preprocess all responses with Handlebars templates");
         optionParser.accepts(LOCAL_RESPONSE_TEMPLATING, "Preprocess selected responses with Handlebars templates");
+        optionParser.accepts(TEMPLATE_CACHE_SIZE, "Maximum number of compiled response templates to keep, with --" + GLOBAL_RESPONSE_TEMPLATING + " or --" + LOCAL_RESPONSE_TEMPLATING + ". 0 to compile them on every request. Default: 10000").withRequiredArg().defaultsTo("10000");
         optionParser.accepts(ADMIN_API_BASIC_AUTH, "Require HTTP Basic authentication for admin API calls with the supplied credentials in username:password format").withRequiredArg();
         optionParser.accepts(ADMIN_API_REQUIRE_HTTPS, "Require HTTPS to be used to access the admin API");
         optionParser.accepts(ASYNCHRONOUS_RESPONSE_ENABLED, "Enable asynchronous response").withRequiredArg().defaultsTo("false");
         optionParser.accepts(ASYNCHRONOUS_RESPONSE_THREADS, "Number of asynchronous response threads").withRequiredArg().defaultsTo("10");
 
-        optionParser.accepts(OPENAPI_FILE, "Specifies path/url to OpenApi3 or Swagger/OpenApi2 definition file").withRequiredArg().defaultsTo("");
+        optionParser.accepts(OPENAPI_FILE, "Specifies path/url to OpenApi3 or Swagger/OpenApi2 definition file. May be repeated with a host and/or path prefix binding, e.g. /orders=orders.yaml or orders.local=orders.yaml").withRequiredArg();
+        optionParser.accepts(OPENAPI_VALIDATION_MODE, "Either sync (fail the response with a 500 on violations) or async (report violations from a background worker without failing the response)").withRequiredArg().defaultsTo(SYNC_VALIDATION_MODE);
+        optionParser.accepts(OPENAPI_VALIDATION_THREADS, "Number of background validation threads in async validation mode").withRequiredArg().defaultsTo("2");
+        optionParser.accepts(OPENAPI_VALIDATION_QUEUE_SIZE, "Maximum number of interactions waiting for validation in async validation mode").withRequiredArg().defaultsTo("1000");
+        optionParser.accepts(OPENAPI_VALIDATION_OVERFLOW, "What to do when the async validation queue is full: drop (discard and count), block (wait for room) or sync (validate on the container thread)").withRequiredArg().defaultsTo("drop");
+        optionParser.accepts(OPENAPI_VALIDATION_CACHE_SIZE, "Maximum number of validation reports to memoize for repeated identical interactions. Default: 0 (no caching)").withRequiredArg().defaultsTo("0");
+        optionParser.accepts(OPENAPI_WATCH, "Reload OpenApi files in the background when they change on disk");
+        optionParser.accepts(OPENAPI_SAMPLE_RATE, "Fraction of interactions to validate, between 0 and 1. Default: 1 (validate everything)").withRequiredArg().defaultsTo("1");
+        optionParser.accepts(OPENAPI_OPERATION_SAMPLE_RATE, "Fraction of interactions to validate for a single operation, overriding --" + OPENAPI_SAMPLE_RATE + ". May be repeated, e.g. \"GET /pets/{petId}=0.05\"").withRequiredArg();
+        optionParser.accepts(OPENAPI_ALWAYS_VALIDATE_FIRST, "Number of interactions to always validate per operation, whatever the sample rate. Default: 0").withRequiredArg().defaultsTo("0");
+        optionParser.accepts(OPENAPI_MAX_BODY_SIZE, "Largest request or response body to validate, in bytes; larger bodies are left out of validation. Default: -1, no limit").withRequiredArg().defaultsTo("-1");
+        optionParser.accepts(OPENAPI_SKIP_BODY_CONTENT_TYPE, "Content type whose bodies are left out of validation, such as image/* or application/x-protobuf. May be repeated. Default: the binary types " + String.join(", ", BodyPolicy.BINARY_CONTENT_TYPES) + ", 'none' to validate every body").withRequiredArg();
+        optionParser.accepts(OPENAPI_SPEC_CACHE_DIR, "Directory to keep precompiled OpenApi files in, keyed by content hash, so later starts load them faster. Default: none (no caching)").withRequiredArg();
+        optionParser.accepts(OPENAPI_VERIFY_STUBS, "Validate the responses of the loaded stubs at startup, in parallel, and only validate the requests of interactions served by stubs that passed");
+        optionParser.accepts(OPENAPI_VERIFY_STUBS_REPORT, "File to write the stub verification report to. Default: openapi-stub-verification.json in the root dir").withRequiredArg();
+        optionParser.accepts(OPENAPI_VIOLATION_JOURNAL_SIZE, "Number of distinct validation violations to keep for GET /__admin/openapi/violations. 0 to keep none. Default: 1000").withRequiredArg().defaultsTo("1000");
+        optionParser.accepts(OPENAPI_BATCH_VALIDATE, "Validate recorded traffic offline instead of starting the server, then exit: a request journal export (GET /__admin/requests, optionally gzipped) or a mappings directory").withRequiredArg();
+        optionParser.accepts(OPENAPI_BATCH_REPORT, "File to write the batch validation report to. Default: openapi-batch-validation.json in the root dir").withRequiredArg();
+        optionParser.accepts(OPENAPI_BATCH_THREADS, "Number of threads validating recorded traffic with --" + OPENAPI_BATCH_VALIDATE + ". Default: the number of cores").withRequiredArg();
+        optionParser.accepts(MAPPINGS_INDEX, "File to keep an index of the parsed " + MAPPINGS_ROOT + " files in, so later starts only read and parse the files that changed. Default: none").withRequiredArg();
+        optionParser.accepts(WATCH_MAPPINGS, "Apply changes to the " + MAPPINGS_ROOT + " files to the loaded stubs while running, file by file");
+        optionParser.accepts(REQUEST_JOURNAL_MAX_BYTES, "Keep the request journal off the heap, in a memory-mapped ring file of this many bytes, discarding the oldest entries when it is full. Default: none (journal on the heap)").withRequiredArg();
+        optionParser.accepts(REQUEST_JOURNAL_FILE, "File to map the request journal to with --" + REQUEST_JOURNAL_MAX_BYTES + ". Default: a temporary file").withRequiredArg();
+        optionParser.accepts(PROXY_MAX_CONNECTIONS, "Maximum number of connections to all proxy targets together. Default: 1000").withRequiredArg();
+        optionParser.accepts(PROXY_MAX_CONNECTIONS_PER_HOST, "Maximum number of connections to each proxy target, e.g. 50, or to one of them, e.g. orders:8080=100. May be repeated. Default: 5").withRequiredArg();
+        optionParser.accepts(PROXY_KEEP_ALIVE, "Milliseconds an idle connection to a proxy target is kept for reuse. Default: as long as the target allows").withRequiredArg();
+        optionParser.accepts(PROXY_CONNECT_TIMEOUT, "Milliseconds to wait for a connection to a proxy target. Default: no limit").withRequiredArg();
+        optionParser.accepts(PROXY_TIMEOUT, "Milliseconds to wait for data from a proxy target. Default: 300000").withRequiredArg();
+        optionParser.accepts(PROXY_POOL_TIMEOUT, "Milliseconds a proxied request waits for a free connection when the pool is exhausted. Default: no limit").withRequiredArg();
+        optionParser.accepts(PROXY_HTTP2, "Proxy over HTTP/2 to targets that support it, multiplexing requests over one connection per target, and HTTP/1.1 to the others. The Host header is not passed on. Needs --" + HTTPS_TRUSTSTORE + " or --" + PROXY_HTTP2_INSECURE);
+        optionParser.accepts(PROXY_HTTP2_INSECURE, "With --" + PROXY_HTTP2 + " and no --" + HTTPS_TRUSTSTORE + ", trust any certificate and host name. Disables host name verification for every JDK HTTP client in the JVM (jdk.internal.httpclient.disableHostnameVerification)");
+        optionParser.accepts(VIRTUAL_THREADS, "Serve requests, delay asynchronous responses and run async validation on virtual threads, ignoring --" + CONTAINER_THREADS + ". Needs Java 21 or later, platform threads are used otherwise");
 
         optionParser.accepts(HELP, "Print this message");
 
-        optionSet = optionParser.parse(args);
-        validate();
-        captureHelpTextIfRequested(optionParser);
-
-        fileSource = new SingleRootFileSource((String) optionSet.valueOf(ROOT_DIR));
-        mappingsSource = new JsonFileMappingsSource(fileSource.child(MAPPINGS_ROOT));
+        return optionParser;
+    }
 
-        resultingPort = Optional.absent();
+    /**
+     * Picks out the arguments that are WireMock's own, so that the inherited WireMock options honour them. WireMock's
+     * parser rejects any option it does not know, so the {@code openapi-} options and the other options of this
+     * runner ({@link #OWN_OPTIONS}) are left out.
+     */
+    private static String[] wireMockArgs(String... args) {
+        OptionSet options = optionParser().parse(args);
+        List<String> wireMockArgs = new ArrayList<>();
+        for (OptionSpec<?> spec : options.specs()) {
+            String name = spec.options().iterator().next();
+            if (name.startsWith("openapi-") || OWN_OPTIONS.contains(name)) {
+                continue;
+            }
+            if (options.valuesOf(spec).isEmpty()) {
+                wireMockArgs.add("--" + name);
+            }
+            for (Object value : options.valuesOf(spec)) {
+                wireMockArgs.add("--" + name + "=" + value);
+            }
+        }
+        return wireMockArgs.toArray(new String[0]);
     }
 
     private void validate() {
@@ -146,6 +256,90 @@ public class CommandLineOptions extends com.github.tomakehurst.wiremock.standalo
         if (optionSet.has(RECORD_MAPPINGS) && optionSet.has(DISABLE_REQUEST_JOURNAL)) {
             throw new IllegalArgumentException("Request journal must be enabled to record stubs");
         }
+
+        if (optionSet.has(REQUEST_JOURNAL_MAX_BYTES)) {
+            if (optionSet.has(DISABLE_REQUEST_JOURNAL)) {
+                throw new IllegalArgumentException(REQUEST_JOURNAL_MAX_BYTES + " cannot be used with the request journal disabled");
+            }
+            if (requestJournalMaxBytes() <= 0) {
+                throw new IllegalArgumentException(REQUEST_JOURNAL_MAX_BYTES + " must be positive");
+            }
+        }
+
+        String validationMode = (String) optionSet.valueOf(OPENAPI_VALIDATION_MODE);
+        if (!SYNC_VALIDATION_MODE.equals(validationMode) && !ASYNC_VALIDATION_MODE.equals(validationMode)) {
+            throw new IllegalArgumentException("OpenApi validation mode must be either " + SYNC_VALIDATION_MODE + " or " + ASYNC_VALIDATION_MODE);
+        }
+        AsyncValidationExecutor.OverflowPolicy.fromOption((String) optionSet.valueOf(OPENAPI_VALIDATION_OVERFLOW));
+        if (openAPIValidationThreads() <= 0) {
+            throw new IllegalArgumentException(OPENAPI_VALIDATION_THREADS + " must be positive");
+        }
+        if (openAPIValidationQueueSize() <= 0) {
+            throw new IllegalArgumentException(OPENAPI_VALIDATION_QUEUE_SIZE + " must be positive");
+        }
+
+        validateSampleRate(OPENAPI_SAMPLE_RATE, openAPISampleRate());
+        for (Map.Entry<String, Double> operationSampleRate : openAPIOperationSampleRates().entrySet()) {
+            validateSampleRate(OPENAPI_OPERATION_SAMPLE_RATE + " " + operationSampleRate.getKey(), operationSampleRate.getValue());
+        }
+        openAPIMaxBodySize();
+        if (openAPIViolationJournalSize() < 0) {
+            throw new IllegalArgumentException(OPENAPI_VIOLATION_JOURNAL_SIZE + " must not be negative");
+        }
+        for (String option : new String[]{PROXY_MAX_CONNECTIONS, PROXY_KEEP_ALIVE, PROXY_CONNECT_TIMEOUT, PROXY_TIMEOUT, PROXY_POOL_TIMEOUT}) {
+            if (optionSet.has(option) && Long.parseLong((String) optionSet.valueOf(option)) < 0) {
+                throw new IllegalArgumentException(option + " must not be negative");
+            }
+        }
+        for (int maxConnections : proxyMaxConnectionsPerHost().values()) {
+            if (maxConnections <= 0) {
+                throw new IllegalArgumentException(PROXY_MAX_CONNECTIONS_PER_HOST + " must be positive");
+            }
+        }
+        if (proxyHttp2() && (optionSet.has(PROXY_MAX_CONNECTIONS) || optionSet.has(PROXY_MAX_CONNECTIONS_PER_HOST) || optionSet.has(PROXY_POOL_TIMEOUT))) {
+            throw new IllegalArgumentException(PROXY_HTTP2 + " multiplexes requests over one connection per proxy target, so "
+                    + PROXY_MAX_CONNECTIONS + ", " + PROXY_MAX_CONNECTIONS_PER_HOST + " and " + PROXY_POOL_TIMEOUT + " do not apply");
+        }
+        if (proxyHttp2() && !optionSet.has(HTTPS_TRUSTSTORE) && !proxyHttp2Insecure()) {
+            throw new IllegalArgumentException(PROXY_HTTP2 + " verifies certificates against " + HTTPS_TRUSTSTORE
+                    + ", give " + PROXY_HTTP2_INSECURE + " to trust any certificate and host name instead");
+        }
+        if (proxyHttp2Insecure() && (!proxyHttp2() || optionSet.has(HTTPS_TRUSTSTORE))) {
+            throw new IllegalArgumentException(PROXY_HTTP2_INSECURE + " applies only with " + PROXY_HTTP2 + " and no "
+                    + HTTPS_TRUSTSTORE);
+        }
+        if (proxyHttp2() && optionSet.has(PRESERVE_HOST_HEADER)) {
+            throw new IllegalArgumentException(PROXY_HTTP2 + " cannot pass the Host header on, so it cannot be combined with "
+                    + PRESERVE_HOST_HEADER);
+        }
+        if (optionSet.has(OPENAPI_BATCH_VALIDATE) && openAPISpecBindings().isEmpty()) {
+            throw new IllegalArgumentException(OPENAPI_BATCH_VALIDATE + " needs at least one " + OPENAPI_FILE);
+        }
+        if (openAPIBatchThreads() <= 0) {
+            throw new IllegalArgumentException(OPENAPI_BATCH_THREADS + " must be positive");
+        }
+        if (templateCacheSize() < 0) {
+            throw new IllegalArgumentException(TEMPLATE_CACHE_SIZE + " must not be negative");
+        }
+        if (openAPIAlwaysValidateFirst() < 0) {
+            throw new IllegalArgumentException(OPENAPI_ALWAYS_VALIDATE_FIRST + " must not be negative");
+        }
+    }
+
+    private static void validateSampleRate(String option, double rate) {
+        if (!(rate >= 0 && rate <= 1)) {
+            throw new IllegalArgumentException(option + " must be between 0 and 1");
+        }
+    }
+
+    @Override
+    public boolean help() {
+        return optionSet.has(HELP);
+    }
+
+    @Override
+    public String helpText() {
+        return helpText;
     }
 
     private void captureHelpTextIfRequested(OptionParser optionParser) {
@@ -164,19 +358,346 @@ public class CommandLineOptions extends com.github.tomakehurst.wiremock.standalo
     @Override
     public String toString() {
         String o=super.toString();
-        String fileName="<<None>>";
-        String label="OpenApi File";
+        List<SpecBinding> specBindings = openAPISpecBindings();
 
-        if (openAPIFile().length()!=0) fileName=openAPIFile();
-        int paddingLength = 29 - label.length();
-        o+=label+":"+Strings.repeat(" ", paddingLength)+fileName+"\n";
+        if (specBindings.isEmpty()) o+=line("OpenApi File", "<<None>>");
+        for (SpecBinding specBinding : specBindings) {
+            o+=line("OpenApi File", specBinding);
+        }
+
+        if (!specBindings.isEmpty()) {
+            o+=line("OpenApi validation mode", optionSet.valueOf(OPENAPI_VALIDATION_MODE));
+            o+=line("OpenApi hot reload", openAPIWatch() ? "on file change, POST /__admin/openapi/reload" : "POST /__admin/openapi/reload");
+            o+=line("OpenApi validation cache", openAPIValidationCacheSize() > 0 ? openAPIValidationCacheSize() + " entries" : "disabled");
+            o+=line("OpenApi sample rate", openAPISampleRate());
+            for (Map.Entry<String, Double> operationSampleRate : openAPIOperationSampleRates().entrySet()) {
+                o+=line("OpenApi sample rate", operationSampleRate.getKey() + " " + operationSampleRate.getValue());
+            }
+            if (openAPIAlwaysValidateFirst() > 0) {
+                o+=line("OpenApi always validated", "first " + openAPIAlwaysValidateFirst() + " per operation");
+            }
+            o+=line("OpenApi max body size", openAPIMaxBodySize() < 0 ? "unlimited" : openAPIMaxBodySize() + " bytes");
+            o+=line("OpenApi skipped bodies", String.join(", ", openAPISkippedBodyContentTypes()));
+            o+=line("OpenApi spec cache", openAPISpecCacheDir() == null ? "disabled" : openAPISpecCacheDir());
+            o+=line("OpenApi stub verification", openAPIVerifyStubs() ? "report in " + openAPIVerifyStubsReport() : "disabled");
+            o+=line("OpenApi violation journal", openAPIViolationJournalSize() > 0 ? openAPIViolationJournalSize() + " distinct violations" : "disabled");
+        }
+        o+=line("Mappings index", optionSet.has(MAPPINGS_INDEX) ? optionSet.valueOf(MAPPINGS_INDEX) : "disabled");
+        o+=line("Mappings watch", watchMappings() ? "enabled" : "disabled");
+        if (optionSet.has(REQUEST_JOURNAL_MAX_BYTES)) {
+            o+=line("Request journal", requestJournalMaxBytes() + " bytes mapped to " + requestJournalFile());
+        }
+        if (proxyClientConfigured()) {
+            if (proxyHttp2()) {
+                o+=line("Proxy client", proxyHttp2Insecure() ? "HTTP/2, host names not verified" : "HTTP/2");
+            } else {
+                o+=line("Proxy connections", (optionSet.has(PROXY_MAX_CONNECTIONS) ? proxyMaxConnections() : "default") + " in total");
+                for (Map.Entry<String, Integer> maxConnections : proxyMaxConnectionsPerHost().entrySet()) {
+                    o+=line("Proxy connections", maxConnections.getValue() + " per " + (maxConnections.getKey().isEmpty() ? "target" : maxConnections.getKey()));
+                }
+            }
+            o+=line("Proxy keep-alive", proxyKeepAlive() < 0 ? "default" : proxyKeepAlive() + " ms");
+            o+=line("Proxy timeouts", "connect " + timeout(proxyConnectTimeout()) + ", read " + timeout(proxyTimeout())
+                    + (proxyHttp2() ? "" : ", pool " + timeout(proxyPoolTimeout())));
+        }
+        if (responseTemplating()) {
+            o+=line("Template cache", templateCacheSize() > 0 ? templateCacheSize() + " compiled templates" : "disabled");
+        }
+        if (optionSet.has(VIRTUAL_THREADS)) {
+            o+=line("Virtual threads", virtualThreads() ? "enabled" : "not supported by this JVM, using platform threads");
+        }
 
         return o;
     }
 
-    public String openAPIFile() {
-        return (String) optionSet.valueOf(OPENAPI_FILE);
+    private static String timeout(int millis) {
+        return millis < 0 ? "default" : millis + " ms";
+    }
+
+    @Override
+    public MappingsLoader mappingsLoader() {
+        return mappingsSource;
+    }
+
+    @Override
+    public MappingsSaver mappingsSaver() {
+        return mappingsSource;
+    }
+
+    @Override
+    public ThreadPoolFactory threadPoolFactory() {
+        return virtualThreads() ? new VirtualThreadPoolFactory() : super.threadPoolFactory();
+    }
+
+    /**
+     * @return whether virtual threads were asked for and the JVM has them.
+     */
+    public boolean virtualThreads() {
+        return optionSet.has(VIRTUAL_THREADS) && VirtualThreads.isSupported();
+    }
+
+    /**
+     * @return whether any of the proxy client options is given, in which case WireMock's proxy client is tuned.
+     */
+    public boolean proxyClientConfigured() {
+        for (String option : PROXY_CLIENT_OPTIONS) {
+            if (optionSet.has(option)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the maximum number of proxy connections in total, or -1 for WireMock's default.
+     */
+    public int proxyMaxConnections() {
+        return intOption(PROXY_MAX_CONNECTIONS);
+    }
+
+    /**
+     * @return the maximum number of connections by proxy target ({@code host[:port]}), the default for all targets
+     * keyed by the empty string.
+     */
+    public Map<String, Integer> proxyMaxConnectionsPerHost() {
+        Map<String, Integer> maxConnections = new LinkedHashMap<>();
+        for (Object value : optionSet.valuesOf(PROXY_MAX_CONNECTIONS_PER_HOST)) {
+            String option = (String) value;
+            int separator = option.lastIndexOf('=');
+            maxConnections.put(separator < 0 ? "" : option.substring(0, separator).trim().toLowerCase(),
+                    Integer.parseInt(option.substring(separator + 1).trim()));
+        }
+        return maxConnections;
+    }
+
+    /**
+     * @return how long idle proxy connections are kept, in milliseconds, or -1 for as long as the target allows.
+     */
+    public long proxyKeepAlive() {
+        return optionSet.has(PROXY_KEEP_ALIVE) ? Long.parseLong((String) optionSet.valueOf(PROXY_KEEP_ALIVE)) : -1;
+    }
+
+    public int proxyConnectTimeout() {
+        return intOption(PROXY_CONNECT_TIMEOUT);
+    }
+
+    public int proxyTimeout() {
+        return intOption(PROXY_TIMEOUT);
+    }
+
+    public int proxyPoolTimeout() {
+        return intOption(PROXY_POOL_TIMEOUT);
+    }
+
+    public boolean proxyHttp2() {
+        return optionSet.has(PROXY_HTTP2);
+    }
+
+    /**
+     * @return whether the HTTP/2 proxy client may trust any certificate and turn off host name verification, which the
+     * JDK only allows for the whole JVM.
+     */
+    public boolean proxyHttp2Insecure() {
+        return optionSet.has(PROXY_HTTP2_INSECURE);
     }
 
+    private int intOption(String option) {
+        return optionSet.has(option) ? Integer.parseInt((String) optionSet.valueOf(option)) : -1;
+    }
+
+    ParallelMappingsSource parallelMappingsSource() {
+        return mappingsSource;
+    }
 
-}
\ No newline at end of file
+    public boolean watchMappings() {
+        return optionSet.has(WATCH_MAPPINGS);
+    }
+
+    public boolean responseTemplating() {
+        return optionSet.has(GLOBAL_RESPONSE_TEMPLATING) || optionSet.has(LOCAL_RESPONSE_TEMPLATING);
+    }
+
+    public long templateCacheSize() {
+        return Long.parseLong((String) optionSet.valueOf(TEMPLATE_CACHE_SIZE));
+    }
+
+    /**
+     * @return the size of the off-heap request journal, or 0 if the journal is kept on the heap.
+     */
+    public int requestJournalMaxBytes() {
+        if (!optionSet.has(REQUEST_JOURNAL_MAX_BYTES)) {
+            return 0;
+        }
+        long maxBytes = Long.parseLong((String) optionSet.valueOf(REQUEST_JOURNAL_MAX_BYTES));
+        if (maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(REQUEST_JOURNAL_MAX_BYTES + " must be at most " + Integer.MAX_VALUE);
+        }
+        return (int) maxBytes;
+    }
+
+    /**
+     * @return the file to map the off-heap request journal to, created on first call if none was given.
+     */
+    public synchronized String requestJournalFile() {
+        if (requestJournalFile == null) {
+            if (optionSet.has(REQUEST_JOURNAL_FILE)) {
+                requestJournalFile = (String) optionSet.valueOf(REQUEST_JOURNAL_FILE);
+            } else {
+                try {
+                    File file = File.createTempFile("wiremock-request-journal", ".bin");
+                    file.deleteOnExit();
+                    requestJournalFile = file.getPath();
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+        return requestJournalFile;
+    }
+
+    /**
+     * Registers extension instances built by the runner, in addition to those named with --extensions.
+     */
+    public void addExtensions(Extension... extensions) {
+        for (Extension extension : extensions) {
+            this.extensions.put(extension.getName(), extension);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T extends Extension> Map<String, T> extensionsOfType(Class<T> extensionType) {
+        Map<String, T> result = new LinkedHashMap<>(super.extensionsOfType(extensionType));
+        for (Map.Entry<String, Extension> extension : extensions.entrySet()) {
+            if (extensionType.isAssignableFrom(extension.getValue().getClass())) {
+                result.put(extension.getKey(), (T) extension.getValue());
+            }
+        }
+        return result;
+    }
+
+    private static String line(String label, Object value) {
+        int paddingLength = 29 - label.length();
+        return label+":"+Strings.repeat(" ", paddingLength)+value+"\n";
+    }
+
+    public List<SpecBinding> openAPISpecBindings() {
+        List<SpecBinding> specBindings = new ArrayList<>();
+        for (Object value : optionSet.valuesOf(OPENAPI_FILE)) {
+            specBindings.add(SpecBinding.parse((String) value));
+        }
+        return specBindings;
+    }
+
+    public boolean openAPIAsyncValidation() {
+        return ASYNC_VALIDATION_MODE.equals(optionSet.valueOf(OPENAPI_VALIDATION_MODE));
+    }
+
+    public int openAPIValidationThreads() {
+        return Integer.parseInt((String) optionSet.valueOf(OPENAPI_VALIDATION_THREADS));
+    }
+
+    public int openAPIValidationQueueSize() {
+        return Integer.parseInt((String) optionSet.valueOf(OPENAPI_VALIDATION_QUEUE_SIZE));
+    }
+
+    public boolean openAPIWatch() {
+        return optionSet.has(OPENAPI_WATCH);
+    }
+
+    public long openAPIValidationCacheSize() {
+        return Long.parseLong((String) optionSet.valueOf(OPENAPI_VALIDATION_CACHE_SIZE));
+    }
+
+    public AsyncValidationExecutor.OverflowPolicy openAPIValidationOverflowPolicy() {
+        return AsyncValidationExecutor.OverflowPolicy.fromOption((String) optionSet.valueOf(OPENAPI_VALIDATION_OVERFLOW));
+    }
+
+    public double openAPISampleRate() {
+        return Double.parseDouble((String) optionSet.valueOf(OPENAPI_SAMPLE_RATE));
+    }
+
+    /**
+     * @return the sample rate of each operation given one, keyed by operation as in "GET /pets/{petId}".
+     */
+    public Map<String, Double> openAPIOperationSampleRates() {
+        Map<String, Double> rates = new LinkedHashMap<>();
+        for (Object value : optionSet.valuesOf(OPENAPI_OPERATION_SAMPLE_RATE)) {
+            String option = (String) value;
+            int separator = option.lastIndexOf('=');
+            if (separator <= 0) {
+                throw new IllegalArgumentException(OPENAPI_OPERATION_SAMPLE_RATE + " must look like \"GET /pets/{petId}=0.05\"");
+            }
+            rates.put(option.substring(0, separator).trim(), Double.parseDouble(option.substring(separator + 1).trim()));
+        }
+        return rates;
+    }
+
+    public long openAPIAlwaysValidateFirst() {
+        return Long.parseLong((String) optionSet.valueOf(OPENAPI_ALWAYS_VALIDATE_FIRST));
+    }
+
+    public long openAPIMaxBodySize() {
+        return Long.parseLong((String) optionSet.valueOf(OPENAPI_MAX_BODY_SIZE));
+    }
+
+    /**
+     * @return the content types given with {@code --openapi-skip-body-content-type}, without {@code none}, or the binary
+     * content types if the option is not given.
+     */
+    public List<String> openAPISkippedBodyContentTypes() {
+        if (!optionSet.has(OPENAPI_SKIP_BODY_CONTENT_TYPE)) {
+            return BodyPolicy.BINARY_CONTENT_TYPES;
+        }
+        List<String> contentTypes = new ArrayList<>();
+        for (Object value : optionSet.valuesOf(OPENAPI_SKIP_BODY_CONTENT_TYPE)) {
+            if (!"none".equalsIgnoreCase(((String) value).trim())) {
+                contentTypes.add((String) value);
+            }
+        }
+        return contentTypes;
+    }
+
+    /**
+     * @return the directory to keep precompiled OpenApi files in, or {@code null} if they are not cached.
+     */
+    public String openAPISpecCacheDir() {
+        return (String) optionSet.valueOf(OPENAPI_SPEC_CACHE_DIR);
+    }
+
+    public boolean openAPIVerifyStubs() {
+        return optionSet.has(OPENAPI_VERIFY_STUBS);
+    }
+
+    public int openAPIViolationJournalSize() {
+        return Integer.parseInt((String) optionSet.valueOf(OPENAPI_VIOLATION_JOURNAL_SIZE));
+    }
+
+    public String openAPIVerifyStubsReport() {
+        if (optionSet.has(OPENAPI_VERIFY_STUBS_REPORT)) {
+            return (String) optionSet.valueOf(OPENAPI_VERIFY_STUBS_REPORT);
+        }
+        return new File((String) optionSet.valueOf(ROOT_DIR), "openapi-stub-verification.json").getPath();
+    }
+
+    /**
+     * @return the recorded traffic to validate offline, or {@code null} to start the server.
+     */
+    public String openAPIBatchInput() {
+        return (String) optionSet.valueOf(OPENAPI_BATCH_VALIDATE);
+    }
+
+    public String openAPIBatchReport() {
+        if (optionSet.has(OPENAPI_BATCH_REPORT)) {
+            return (String) optionSet.valueOf(OPENAPI_BATCH_REPORT);
+        }
+        return new File((String) optionSet.valueOf(ROOT_DIR), "openapi-batch-validation.json").getPath();
+    }
+
+    public int openAPIBatchThreads() {
+        if (optionSet.has(OPENAPI_BATCH_THREADS)) {
+            return Integer.parseInt((String) optionSet.valueOf(OPENAPI_BATCH_THREADS));
+        }
+        return Runtime.getRuntime().availableProcessors();
+    }
+}
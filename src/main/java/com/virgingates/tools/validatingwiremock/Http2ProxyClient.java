@@ -0,0 +1,250 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.common.KeyStoreSettings;
+import com.github.tomakehurst.wiremock.common.ProxySettings;
+import com.google.common.collect.ImmutableSet;
+import wiremock.org.apache.http.Header;
+import wiremock.org.apache.http.HttpEntity;
+import wiremock.org.apache.http.HttpEntityEnclosingRequest;
+import wiremock.org.apache.http.HttpHost;
+import wiremock.org.apache.http.HttpRequest;
+import wiremock.org.apache.http.HttpVersion;
+import wiremock.org.apache.http.ProtocolVersion;
+import wiremock.org.apache.http.client.methods.CloseableHttpResponse;
+import wiremock.org.apache.http.client.methods.HttpUriRequest;
+import wiremock.org.apache.http.conn.ClientConnectionManager;
+import wiremock.org.apache.http.entity.ByteArrayEntity;
+import wiremock.org.apache.http.impl.client.CloseableHttpClient;
+import wiremock.org.apache.http.message.BasicHttpResponse;
+import wiremock.org.apache.http.message.BasicStatusLine;
+import wiremock.org.apache.http.params.HttpParams;
+import wiremock.org.apache.http.protocol.HttpContext;
+
+import javax.annotation.Nonnull;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Authenticator;
+import java.net.InetSocketAddress;
+import java.net.PasswordAuthentication;
+import java.net.ProxySelector;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Proxies requests with the JDK's HTTP client, which speaks HTTP/2 to upstreams that support it (negotiated with ALPN
+ * over TLS, or by upgrading cleartext connections) and multiplexes concurrent requests over a single connection per
+ * upstream. Upstreams that only speak HTTP/1.1 are reached over HTTP/1.1.
+ * <p>
+ * Stands in for the Apache client WireMock's proxy renderer calls, which knows no HTTP/2. Like WireMock's client, it
+ * follows no redirect and does not decompress bodies. Without a trust store, it trusts any certificate and host name only
+ * when told to be insecure: the JDK only lets host name verification be turned off for the whole JVM, so other JDK HTTP
+ * clients stop verifying host names too. Headers the JDK client sets itself, {@code Host} included, are not passed on.
+ */
+class Http2ProxyClient extends CloseableHttpClient {
+
+    private static final ProtocolVersion HTTP_2 = new ProtocolVersion("HTTP", 2, 0);
+    private static final Set<String> RESTRICTED_HEADERS = ImmutableSet.of("connection", "content-length", "date",
+            "expect", "from", "host", "keep-alive", "proxy-connection", "te", "transfer-encoding", "upgrade", "via", "warning");
+
+    private final HttpClient client;
+    private final Duration timeout;
+    private final ConcurrentMap<String, AtomicInteger> inFlightByHost = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> requestsByHost = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> responsesByProtocol = new ConcurrentHashMap<>();
+
+    /**
+     * @param connectTimeoutMillis how long to wait for a connection, or -1 for no limit
+     * @param timeoutMillis        how long to wait for a response, or -1 for no limit
+     * @param keepAliveMillis      how long idle connections are kept, or -1 for the JDK's default (20 minutes)
+     * @param insecure             whether to trust any certificate and host name when there is no trust store
+     */
+    Http2ProxyClient(final int connectTimeoutMillis, final int timeoutMillis, final long keepAliveMillis,
+                     @Nonnull final ProxySettings proxyVia, @Nonnull final KeyStoreSettings trustStore, final boolean insecure) {
+        if (trustStore == KeyStoreSettings.NO_STORE && !insecure) {
+            throw new IllegalArgumentException("The HTTP/2 proxy client needs a trust store unless it may be insecure");
+        }
+        // both are read once, when the JDK client is first used
+        if (trustStore == KeyStoreSettings.NO_STORE) {
+            System.setProperty("jdk.internal.httpclient.disableHostnameVerification", "true");
+        }
+        if (keepAliveMillis >= 0) {
+            System.setProperty("jdk.httpclient.keepalive.timeout", String.valueOf(Math.max(keepAliveMillis / 1000, 1)));
+        }
+
+        final HttpClient.Builder builder = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NEVER)
+                .sslContext(sslContext(trustStore));
+        if (connectTimeoutMillis > 0) {
+            builder.connectTimeout(Duration.ofMillis(connectTimeoutMillis));
+        }
+        if (proxyVia != ProxySettings.NO_PROXY) {
+            builder.proxy(ProxySelector.of(new InetSocketAddress(proxyVia.host(), proxyVia.port())));
+            if (proxyVia.getUsername() != null && !proxyVia.getUsername().isEmpty()) {
+                builder.authenticator(new Authenticator() {
+                    @Override
+                    protected PasswordAuthentication getPasswordAuthentication() {
+                        return getRequestorType() == RequestorType.PROXY
+                                ? new PasswordAuthentication(proxyVia.getUsername(), proxyVia.getPassword().toCharArray())
+                                : null;
+                    }
+                });
+            }
+        }
+        this.client = builder.build();
+        this.timeout = timeoutMillis > 0 ? Duration.ofMillis(timeoutMillis) : null;
+    }
+
+    private static SSLContext sslContext(final KeyStoreSettings trustStore) {
+        try {
+            final TrustManager[] trustManagers;
+            if (trustStore == KeyStoreSettings.NO_STORE) {
+                trustManagers = new TrustManager[]{new TrustAnything()};
+            } else {
+                final TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+                factory.init(trustStore.loadStore());
+                trustManagers = factory.getTrustManagers();
+            }
+            final SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, trustManagers, null);
+            return sslContext;
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException("Unable to set up TLS for the HTTP/2 proxy client", e);
+        }
+    }
+
+    @Override
+    protected CloseableHttpResponse doExecute(final HttpHost target, final HttpRequest request, final HttpContext context)
+            throws IOException {
+        URI uri = request instanceof HttpUriRequest ? ((HttpUriRequest) request).getURI() : URI.create(request.getRequestLine().getUri());
+        if (!uri.isAbsolute()) {
+            uri = URI.create(target.toURI()).resolve(uri);
+        }
+        final java.net.http.HttpRequest.Builder builder = java.net.http.HttpRequest.newBuilder(uri);
+        if (timeout != null) {
+            builder.timeout(timeout);
+        }
+        for (final Header header : request.getAllHeaders()) {
+            if (!RESTRICTED_HEADERS.contains(header.getName().toLowerCase(Locale.ROOT))) {
+                builder.header(header.getName(), header.getValue());
+            }
+        }
+        final HttpEntity entity = request instanceof HttpEntityEnclosingRequest ? ((HttpEntityEnclosingRequest) request).getEntity() : null;
+        final java.net.http.HttpRequest.BodyPublisher body;
+        if (entity != null) {
+            // written rather than read: WireMock gzips bodies it proxies with a GzipCompressingEntity, which has no content
+            final ByteArrayOutputStream content = new ByteArrayOutputStream();
+            entity.writeTo(content);
+            body = java.net.http.HttpRequest.BodyPublishers.ofByteArray(content.toByteArray());
+        } else {
+            body = java.net.http.HttpRequest.BodyPublishers.noBody();
+        }
+        builder.method(request.getRequestLine().getMethod(), body);
+
+        final String host = uri.getScheme() + "://" + uri.getAuthority();
+        final AtomicInteger inFlight = inFlightByHost.computeIfAbsent(host, key -> new AtomicInteger());
+        requestsByHost.computeIfAbsent(host, key -> new LongAdder()).increment();
+        inFlight.incrementAndGet();
+        final HttpResponse<byte[]> response;
+        try {
+            response = client.send(builder.build(), HttpResponse.BodyHandlers.ofByteArray());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while proxying to " + uri);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+        responsesByProtocol.computeIfAbsent(response.version().name(), key -> new LongAdder()).increment();
+
+        final Response result = new Response(new BasicStatusLine(
+                response.version() == HttpClient.Version.HTTP_2 ? HTTP_2 : HttpVersion.HTTP_1_1, response.statusCode(), ""));
+        response.headers().map().forEach((name, values) -> {
+            if (!name.startsWith(":")) {
+                values.forEach(value -> result.addHeader(name, value));
+            }
+        });
+        result.setEntity(new ByteArrayEntity(response.body()));
+        return result;
+    }
+
+    /**
+     * @return the requests in flight and made per upstream, and the responses per protocol, for JSON output.
+     */
+    @Nonnull
+    Map<String, Object> metrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("inFlight", inFlightByHost.values().stream().mapToInt(AtomicInteger::get).sum());
+        final Map<String, Object> hosts = new TreeMap<>();
+        requestsByHost.forEach((host, requests) -> {
+            final Map<String, Object> hostMetrics = new LinkedHashMap<>();
+            hostMetrics.put("inFlight", inFlightByHost.get(host).get());
+            hostMetrics.put("requests", requests.sum());
+            hosts.put(host, hostMetrics);
+        });
+        metrics.put("hosts", hosts);
+        final Map<String, Long> protocols = new TreeMap<>();
+        responsesByProtocol.forEach((protocol, responses) -> protocols.put(protocol, responses.sum()));
+        metrics.put("protocols", protocols);
+        return metrics;
+    }
+
+    @Override
+    public void close() {
+        // the JDK client has nothing to close before Java 21, its connections go when it is garbage collected
+    }
+
+    @Override
+    @Deprecated
+    public HttpParams getParams() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    @Deprecated
+    public ClientConnectionManager getConnectionManager() {
+        throw new UnsupportedOperationException();
+    }
+
+    private static final class Response extends BasicHttpResponse implements CloseableHttpResponse {
+        private Response(final BasicStatusLine statusLine) {
+            super(statusLine);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static final class TrustAnything implements X509TrustManager {
+        @Override
+        public void checkClientTrusted(final X509Certificate[] chain, final String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(final X509Certificate[] chain, final String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
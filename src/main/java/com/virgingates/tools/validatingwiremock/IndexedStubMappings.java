@@ -0,0 +1,310 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.matching.RequestMatcherExtension;
+import com.github.tomakehurst.wiremock.matching.RequestPattern;
+import com.github.tomakehurst.wiremock.matching.StringValuePattern;
+import com.github.tomakehurst.wiremock.stubbing.InMemoryStubMappings;
+import com.github.tomakehurst.wiremock.stubbing.Scenario;
+import com.github.tomakehurst.wiremock.stubbing.Scenarios;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.github.tomakehurst.wiremock.stubbing.StubMappings;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import wiremock.com.google.common.base.Optional;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import static com.github.tomakehurst.wiremock.core.WireMockApp.FILES_ROOT;
+
+/**
+ * Stub mappings indexed by method and literal url path, so that finding the stub for a request does not mean
+ * matching it against every stub.
+ * <p>
+ * Stubs matching a literal {@code url} or {@code urlPath} go in a bucket per method (or any method) and path; all
+ * others (url patterns, {@code anyUrl()} such as the {@code --proxy-all} catch-all, custom matchers) go in a single
+ * list that every request is also checked against. A request is matched against the stubs of its two buckets and
+ * that list only, merged in WireMock's own order (priority, then most recently added first), so the first matching
+ * stub is the one {@link InMemoryStubMappings} would have picked.
+ * <p>
+ * Everything but serving is delegated to the {@link InMemoryStubMappings} WireMock created, which keeps owning the
+ * stubs, their insertion order, scenarios and lifecycle listeners. Since WireMock has no extension point for this,
+ * {@link #install} swaps it in by reflection; if that fails, WireMock's own implementation stays in use.
+ */
+class IndexedStubMappings implements StubMappings {
+
+    private static final Comparator<StubMapping> WIREMOCK_ORDER = (a, b) -> {
+        final int byPriority = a.comparePriorityWith(b);
+        return byPriority != 0 ? byPriority : Long.compare(b.getInsertionIndex(), a.getInsertionIndex());
+    };
+
+    private final InMemoryStubMappings delegate;
+    private final Scenarios scenarios;
+    private final Map<String, RequestMatcherExtension> customMatchers;
+    private final Map<String, ResponseDefinitionTransformer> transformers;
+    private final FileSource rootFileSource;
+
+    private final Map<String, NavigableSet<StubMapping>> byMethodAndPath = new ConcurrentHashMap<>();
+    private final NavigableSet<StubMapping> unindexed = new ConcurrentSkipListSet<>(WIREMOCK_ORDER);
+    private final Map<UUID, StubMapping> indexed = new ConcurrentHashMap<>();
+    private volatile ResponseTemplateCache templateCache;
+
+    @SuppressWarnings("unchecked")
+    private IndexedStubMappings(final InMemoryStubMappings delegate) throws ReflectiveOperationException {
+        this.delegate = delegate;
+        this.scenarios = (Scenarios) WireMockInternals.read(delegate, "scenarios");
+        this.customMatchers = (Map<String, RequestMatcherExtension>) WireMockInternals.read(delegate, "customMatchers");
+        this.transformers = (Map<String, ResponseDefinitionTransformer>) WireMockInternals.read(delegate, "transformers");
+        this.rootFileSource = (FileSource) WireMockInternals.read(delegate, "rootFileSource");
+        for (final StubMapping mapping : delegate.getAll()) {
+            index(mapping);
+        }
+    }
+
+    /**
+     * Replaces the stub mappings of the server with indexed ones, keeping the stubs already loaded.
+     *
+     * @throws ReflectiveOperationException if this version of WireMock is not laid out as expected, in which case
+     *                                      the server is left as it was
+     */
+    static IndexedStubMappings install(@Nonnull final WireMockServer server) throws ReflectiveOperationException {
+        final Object wireMockApp = WireMockInternals.wireMockApp(server);
+        final Object stubMappings = WireMockInternals.read(wireMockApp, "stubMappings");
+        if (stubMappings instanceof IndexedStubMappings) {
+            return (IndexedStubMappings) stubMappings;
+        }
+        if (!(stubMappings instanceof InMemoryStubMappings)) {
+            throw new NoSuchFieldException("Unexpected stub mappings " + stubMappings.getClass().getName());
+        }
+        final IndexedStubMappings indexedStubMappings = new IndexedStubMappings((InMemoryStubMappings) stubMappings);
+        WireMockInternals.write(wireMockApp, "stubMappings", indexedStubMappings);
+        return indexedStubMappings;
+    }
+
+    @Override
+    public ServeEvent serveFor(final Request request) {
+        final StubMapping matchingMapping = findMatching(request);
+        scenarios.onStubServed(matchingMapping);
+        final ResponseDefinition responseDefinition = applyTransformations(request, matchingMapping);
+        return ServeEvent.of(LoggedRequest.createFrom(request), ResponseDefinition.copyOf(responseDefinition), matchingMapping);
+    }
+
+    private StubMapping findMatching(final Request request) {
+        final String path = pathOf(request.getUrl());
+        final List<Iterator<StubMapping>> candidates = new ArrayList<>(3);
+        addCandidates(candidates, byMethodAndPath.get(key(request.getMethod(), path)));
+        addCandidates(candidates, byMethodAndPath.get(key(RequestMethod.ANY, path)));
+        addCandidates(candidates, unindexed);
+
+        final StubMapping[] heads = new StubMapping[candidates.size()];
+        for (int i = 0; i < heads.length; i++) {
+            heads[i] = candidates.get(i).next();
+        }
+        while (true) {
+            int first = -1;
+            for (int i = 0; i < heads.length; i++) {
+                if (heads[i] != null && (first < 0 || WIREMOCK_ORDER.compare(heads[i], heads[first]) < 0)) {
+                    first = i;
+                }
+            }
+            if (first < 0) {
+                return StubMapping.NOT_CONFIGURED;
+            }
+            final StubMapping mapping = heads[first];
+            if (matches(mapping, request)) {
+                return mapping;
+            }
+            heads[first] = candidates.get(first).hasNext() ? candidates.get(first).next() : null;
+        }
+    }
+
+    private static void addCandidates(final List<Iterator<StubMapping>> candidates, final NavigableSet<StubMapping> mappings) {
+        if (mappings != null) {
+            final Iterator<StubMapping> iterator = mappings.iterator();
+            if (iterator.hasNext()) {
+                candidates.add(iterator);
+            }
+        }
+    }
+
+    private boolean matches(final StubMapping mapping, final Request request) {
+        return mapping.getRequest().match(request, customMatchers).isExactMatch()
+                && (mapping.isIndependentOfScenarioState() || scenarios.mappingMatchesScenarioState(mapping));
+    }
+
+    private ResponseDefinition applyTransformations(final Request request, final StubMapping mapping) {
+        ResponseDefinition responseDefinition = mapping.getResponse();
+        for (final ResponseDefinitionTransformer transformer : transformers.values()) {
+            if (transformer.applyGlobally() || responseDefinition.hasTransformer(transformer)) {
+                final Parameters parameters = responseDefinition.getTransformerParameters() == null
+                        ? Parameters.empty() : responseDefinition.getTransformerParameters();
+                final FileSource files = rootFileSource.child(FILES_ROOT);
+                final ResponseTemplateCache templateCache = this.templateCache;
+                responseDefinition = templateCache != null && templateCache.handles(transformer)
+                        ? templateCache.transform(mapping, request, responseDefinition, files, parameters)
+                        : transformer.transform(request, responseDefinition, files, parameters);
+            }
+        }
+        return responseDefinition;
+    }
+
+    /**
+     * Renders response templates through the cache from now on, in place of WireMock's own response template
+     * transformer. Transformers extending it are left alone, as they may add to the template model.
+     *
+     * @return whether WireMock's response template transformer is registered, and so anything to cache.
+     */
+    boolean cacheTemplates(@Nonnull final ResponseTemplateCache templateCache) throws ReflectiveOperationException {
+        for (final ResponseDefinitionTransformer transformer : transformers.values()) {
+            if (transformer.getClass() == ResponseTemplateTransformer.class) {
+                templateCache.bind((ResponseTemplateTransformer) transformer);
+                this.templateCache = templateCache;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void invalidateTemplates(final UUID id) {
+        final ResponseTemplateCache templateCache = this.templateCache;
+        if (templateCache != null && id != null) {
+            templateCache.invalidate(id);
+        }
+    }
+
+    @Override
+    public synchronized void addMapping(final StubMapping mapping) {
+        delegate.addMapping(mapping);
+        index(mapping);
+        invalidateTemplates(mapping.getUuid());
+    }
+
+    /**
+     * Removes the stub with the mapping's id or, as WireMock does when there is none, every stub with an equal request
+     * pattern (which is how {@code POST /__admin/mappings/remove} identifies stubs).
+     */
+    @Override
+    public synchronized void removeMapping(final StubMapping mapping) {
+        delegate.removeMapping(mapping);
+        final Set<UUID> remaining = new HashSet<>();
+        for (final StubMapping stub : delegate.getAll()) {
+            remaining.add(stub.getUuid());
+        }
+        for (final UUID id : indexed.keySet()) {
+            if (!remaining.contains(id)) {
+                unindex(id);
+                invalidateTemplates(id);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void editMapping(final StubMapping mapping) {
+        delegate.editMapping(mapping);
+        unindex(mapping.getUuid());
+        index(mapping);
+        invalidateTemplates(mapping.getUuid());
+    }
+
+    @Override
+    public synchronized void reset() {
+        delegate.reset();
+        byMethodAndPath.clear();
+        unindexed.clear();
+        indexed.clear();
+        if (templateCache != null) {
+            templateCache.invalidateAll();
+        }
+    }
+
+    @Override
+    public void resetScenarios() {
+        delegate.resetScenarios();
+    }
+
+    @Override
+    public List<StubMapping> getAll() {
+        return delegate.getAll();
+    }
+
+    @Override
+    public Optional<StubMapping> get(final UUID id) {
+        return delegate.get(id);
+    }
+
+    @Override
+    public List<Scenario> getAllScenarios() {
+        return delegate.getAllScenarios();
+    }
+
+    @Override
+    public List<StubMapping> findByMetadata(final StringValuePattern pattern) {
+        return delegate.findByMetadata(pattern);
+    }
+
+    private void index(final StubMapping mapping) {
+        final String path = literalPathOf(mapping.getRequest());
+        final NavigableSet<StubMapping> bucket = path == null ? unindexed
+                : byMethodAndPath.computeIfAbsent(key(mapping.getRequest().getMethod(), path),
+                        key -> new ConcurrentSkipListSet<>(WIREMOCK_ORDER));
+        bucket.add(mapping);
+        indexed.put(mapping.getUuid(), mapping);
+    }
+
+    private void unindex(final UUID id) {
+        final StubMapping mapping = indexed.remove(id);
+        if (mapping == null) {
+            return;
+        }
+        final String path = literalPathOf(mapping.getRequest());
+        if (path == null) {
+            unindexed.remove(mapping);
+            return;
+        }
+        final String key = key(mapping.getRequest().getMethod(), path);
+        final NavigableSet<StubMapping> bucket = byMethodAndPath.get(key);
+        if (bucket != null) {
+            bucket.remove(mapping);
+            if (bucket.isEmpty()) {
+                byMethodAndPath.remove(key);
+            }
+        }
+    }
+
+    /**
+     * @return the path every request matching the pattern has, or {@code null} if the pattern allows several.
+     */
+    private static String literalPathOf(final RequestPattern pattern) {
+        if (pattern.getUrl() != null) {
+            return pathOf(pattern.getUrl());
+        }
+        return pattern.getUrlPath();
+    }
+
+    private static String pathOf(final String url) {
+        final int query = url.indexOf('?');
+        return query < 0 ? url : url.substring(0, query);
+    }
+
+    private static String key(final RequestMethod method, final String path) {
+        return (method == null ? RequestMethod.ANY : method).getName() + " " + path;
+    }
+}
@@ -0,0 +1,414 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.common.Json;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.matching.RequestPattern;
+import com.github.tomakehurst.wiremock.matching.StringValuePattern;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.github.tomakehurst.wiremock.verification.InMemoryRequestJournal;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import com.github.tomakehurst.wiremock.verification.RequestJournal;
+import wiremock.com.google.common.base.Optional;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A request journal kept in a memory-mapped ring file rather than on the heap, bounded by bytes rather than entries.
+ * <p>
+ * Every serve event is written to the ring as deflated JSON, bodies included, evicting the oldest events to make room.
+ * Only a small index entry per event (its id, method, url and where it lies in the ring) stays on the heap. Queries
+ * such as the admin API's "find requests" first narrow the events down by method and url using the index, and only
+ * read and parse those that may match. The file's pages are left to the operating system to keep in memory or write
+ * out to disk, so the journal can stay enabled on long-running instances without growing the heap.
+ * <p>
+ * WireMock journals events through the {@link InMemoryRequestJournal} it creates, and has no extension point to
+ * replace it, so {@link #install} swaps the queue of that journal for the ring by reflection, and replaces it with
+ * this journal for queries. Since events are written as they are journaled, their send time, which WireMock only
+ * records after journaling, is lost.
+ */
+class MappedRequestJournal implements RequestJournal {
+
+    private final Events events;
+
+    private MappedRequestJournal(final Events events) {
+        this.events = events;
+    }
+
+    /**
+     * Moves the server's request journal to the given file, truncating it.
+     *
+     * @throws ReflectiveOperationException if the journal is disabled or this version of WireMock is not laid out as
+     *                                      expected, in which case the server is left as it was
+     */
+    static MappedRequestJournal install(@Nonnull final WireMockServer server, @Nonnull final Path file,
+                                        final int maxBytes) throws ReflectiveOperationException, IOException {
+        final Object wireMockApp = WireMockInternals.wireMockApp(server);
+        final Object requestJournal = WireMockInternals.read(wireMockApp, "requestJournal");
+        if (!(requestJournal instanceof InMemoryRequestJournal)) {
+            throw new NoSuchFieldException("Unexpected request journal " + requestJournal.getClass().getName());
+        }
+        // fail before truncating the file if the queue is not where it is expected
+        WireMockInternals.read(requestJournal, "serveEvents");
+        final MappedRequestJournal journal = new MappedRequestJournal(new Events(file, maxBytes));
+        WireMockInternals.write(requestJournal, "serveEvents", journal.events);
+        WireMockInternals.write(wireMockApp, "requestJournal", journal);
+        return journal;
+    }
+
+    @Override
+    public int countRequestsMatching(final RequestPattern requestPattern) {
+        return getRequestsMatching(requestPattern).size();
+    }
+
+    @Override
+    public List<LoggedRequest> getRequestsMatching(final RequestPattern requestPattern) {
+        final List<LoggedRequest> requests = new ArrayList<>();
+        for (final ServeEvent event : events.matching(requestPattern)) {
+            requests.add(event.getRequest());
+        }
+        return requests;
+    }
+
+    @Override
+    public List<ServeEvent> getAllServeEvents() {
+        final List<ServeEvent> all = new ArrayList<>(events);
+        Collections.reverse(all);
+        return all;
+    }
+
+    @Override
+    public Optional<ServeEvent> getServeEvent(final UUID id) {
+        return Optional.fromNullable(events.get(id));
+    }
+
+    @Override
+    public void reset() {
+        events.clear();
+    }
+
+    @Override
+    public void requestReceived(final ServeEvent serveEvent) {
+        events.add(serveEvent);
+    }
+
+    @Override
+    public void removeEvent(final UUID eventId) {
+        events.remove(eventId);
+    }
+
+    @Override
+    public List<ServeEvent> removeEventsMatching(final RequestPattern requestPattern) {
+        final List<ServeEvent> removed = events.matching(requestPattern);
+        removed.forEach(event -> events.remove(event.getId()));
+        return removed;
+    }
+
+    @Override
+    public List<ServeEvent> removeServeEventsForStubsMatchingMetadata(final StringValuePattern metadataPattern) {
+        final List<ServeEvent> removed = new ArrayList<>();
+        for (final ServeEvent event : events) {
+            final StubMapping stub = event.getStubMapping();
+            if (stub != null && metadataPattern.match(Json.write(stub.getMetadata())).isExactMatch()) {
+                removed.add(event);
+            }
+        }
+        removed.forEach(event -> events.remove(event.getId()));
+        return removed;
+    }
+
+    /**
+     * The ring of serve events, oldest first. As a {@link java.util.Queue} it stands in for the queue of WireMock's
+     * own journal, whose other operations then work unchanged; iterating reads the events lazily.
+     */
+    private static final class Events extends AbstractQueue<ServeEvent> {
+
+        private final MappedByteBuffer ring;
+        private final int capacity;
+        private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+        private final Map<UUID, Entry> byId = new HashMap<>();
+        private int tail;
+
+        Events(final Path file, final int capacity) throws IOException {
+            this.capacity = capacity;
+            if (file.toAbsolutePath().getParent() != null) {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                this.ring = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            }
+        }
+
+        @Override
+        public boolean offer(final ServeEvent event) {
+            final byte[] record = deflate(Json.write(event).getBytes(StandardCharsets.UTF_8));
+            final LoggedRequest request = event.getRequest();
+            synchronized (this) {
+                if (record.length > capacity) {
+                    return true;
+                }
+                if (tail + record.length > capacity) {
+                    while (!entries.isEmpty() && entries.peekFirst().position >= tail) {
+                        evictOldest();
+                    }
+                    tail = 0;
+                }
+                while (!entries.isEmpty() && entries.peekFirst().position >= tail
+                        && entries.peekFirst().position < tail + record.length) {
+                    evictOldest();
+                }
+                final Entry entry = new Entry(event.getId(), request.getMethod(), request.getUrl(), tail, record.length);
+                final ByteBuffer target = ring.duplicate();
+                target.position(tail);
+                target.put(record);
+                tail += record.length;
+                entries.addLast(entry);
+                byId.put(entry.id, entry);
+            }
+            return true;
+        }
+
+        private void evictOldest() {
+            final Entry oldest = entries.pollFirst();
+            if (oldest.live) {
+                oldest.live = false;
+                byId.remove(oldest.id);
+            }
+        }
+
+        @Override
+        public ServeEvent poll() {
+            final byte[] record;
+            synchronized (this) {
+                Entry oldest = entries.pollFirst();
+                while (oldest != null && !oldest.live) {
+                    oldest = entries.pollFirst();
+                }
+                if (oldest == null) {
+                    return null;
+                }
+                record = read(oldest);
+                unlink(oldest);
+            }
+            return inflate(record);
+        }
+
+        @Override
+        public ServeEvent peek() {
+            final Iterator<ServeEvent> iterator = iterator();
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+
+        @Override
+        public synchronized int size() {
+            return byId.size();
+        }
+
+        @Override
+        public synchronized void clear() {
+            entries.forEach(entry -> entry.live = false);
+            entries.clear();
+            byId.clear();
+            tail = 0;
+        }
+
+        @Override
+        public boolean remove(final Object o) {
+            return o instanceof ServeEvent && remove(((ServeEvent) o).getId());
+        }
+
+        synchronized boolean remove(final UUID id) {
+            final Entry entry = byId.get(id);
+            if (entry == null) {
+                return false;
+            }
+            unlink(entry);
+            return true;
+        }
+
+        private void unlink(final Entry entry) {
+            entry.live = false;
+            byId.remove(entry.id);
+        }
+
+        ServeEvent get(final UUID id) {
+            final byte[] record;
+            synchronized (this) {
+                final Entry entry = byId.get(id);
+                if (entry == null) {
+                    return null;
+                }
+                record = read(entry);
+            }
+            return inflate(record);
+        }
+
+        /**
+         * @return the events matching the pattern, oldest first, only reading those whose method and url match.
+         */
+        List<ServeEvent> matching(final RequestPattern pattern) {
+            final List<ServeEvent> matching = new ArrayList<>();
+            final Iterator<ServeEvent> candidates = new EventIterator(entry -> mayMatch(pattern, entry));
+            while (candidates.hasNext()) {
+                final ServeEvent event = candidates.next();
+                if (pattern.match(event.getRequest()).isExactMatch()) {
+                    matching.add(event);
+                }
+            }
+            return matching;
+        }
+
+        private static boolean mayMatch(final RequestPattern pattern, final Entry entry) {
+            final RequestMethod method = pattern.getMethod();
+            if (method != null && !method.equals(RequestMethod.ANY) && !method.equals(entry.method)) {
+                return false;
+            }
+            return pattern.getUrlMatcher() == null || pattern.getUrlMatcher().match(entry.url).isExactMatch();
+        }
+
+        @Override
+        public Iterator<ServeEvent> iterator() {
+            return new EventIterator(entry -> true);
+        }
+
+        private byte[] read(final Entry entry) {
+            final byte[] record = new byte[entry.length];
+            final ByteBuffer source = ring.duplicate();
+            source.position(entry.position);
+            source.get(record);
+            return record;
+        }
+
+        private static byte[] deflate(final byte[] json) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream(json.length / 4 + 16);
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try (DeflaterOutputStream deflating = new DeflaterOutputStream(out, deflater)) {
+                deflating.write(json);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                deflater.end();
+            }
+            return out.toByteArray();
+        }
+
+        private static ServeEvent inflate(final byte[] record) {
+            try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(record))) {
+                final ByteArrayOutputStream json = new ByteArrayOutputStream(record.length * 4);
+                final byte[] buffer = new byte[8192];
+                for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+                    json.write(buffer, 0, read);
+                }
+                return Json.read(new String(json.toByteArray(), StandardCharsets.UTF_8), ServeEvent.class);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Iterates over the events journaled when it was created, skipping those evicted or removed since.
+         */
+        private final class EventIterator implements Iterator<ServeEvent> {
+            private final Iterator<Entry> snapshot;
+            private final Predicate<Entry> filter;
+            private ServeEvent next;
+            private Entry current;
+            private Entry nextEntry;
+
+            EventIterator(final Predicate<Entry> filter) {
+                synchronized (Events.this) {
+                    this.snapshot = new ArrayList<>(entries).iterator();
+                }
+                this.filter = filter;
+            }
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && snapshot.hasNext()) {
+                    final Entry entry = snapshot.next();
+                    if (!entry.live || !filter.test(entry)) {
+                        continue;
+                    }
+                    final byte[] record;
+                    synchronized (Events.this) {
+                        if (!entry.live) {
+                            continue;
+                        }
+                        record = read(entry);
+                    }
+                    next = inflate(record);
+                    nextEntry = entry;
+                }
+                return next != null;
+            }
+
+            @Override
+            public ServeEvent next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final ServeEvent event = next;
+                current = nextEntry;
+                next = null;
+                return event;
+            }
+
+            @Override
+            public void remove() {
+                if (current == null) {
+                    throw new IllegalStateException();
+                }
+                Events.this.remove(current.id);
+                current = null;
+            }
+        }
+    }
+
+    /**
+     * What stays on the heap of a journaled event.
+     */
+    private static final class Entry {
+        private final UUID id;
+        private final RequestMethod method;
+        private final String url;
+        private final int position;
+        private final int length;
+        private volatile boolean live = true;
+
+        private Entry(final UUID id, final RequestMethod method, final String url, final int position, final int length) {
+            this.id = id;
+            this.method = method;
+            this.url = url;
+            this.position = position;
+            this.length = length;
+        }
+    }
+}
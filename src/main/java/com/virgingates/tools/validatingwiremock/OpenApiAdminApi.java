@@ -0,0 +1,83 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.admin.Router;
+import com.github.tomakehurst.wiremock.common.Errors;
+import com.github.tomakehurst.wiremock.extension.AdminApiExtension;
+import com.github.tomakehurst.wiremock.http.QueryParameter;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.jsonResponse;
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.responseDefinition;
+import static com.github.tomakehurst.wiremock.http.RequestMethod.DELETE;
+import static com.github.tomakehurst.wiremock.http.RequestMethod.GET;
+import static com.github.tomakehurst.wiremock.http.RequestMethod.POST;
+import static com.github.tomakehurst.wiremock.http.ResponseDefinition.okForJson;
+import static java.net.HttpURLConnection.HTTP_BAD_REQUEST;
+
+/**
+ * Admin API routes for OpenAPI validation, under {@code /__admin/openapi}.
+ */
+class OpenApiAdminApi implements AdminApiExtension {
+
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    // the code WireMock's own admin API reports invalid input with
+    private static final int VALIDATION_ERROR = 10;
+
+    private final OpenApiValidationListener listener;
+
+    OpenApiAdminApi(final OpenApiValidationListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public String getName() {
+        return "openapi-validation-admin";
+    }
+
+    @Override
+    public void contributeAdminApiRoutes(final Router router) {
+        router.add(GET, "/openapi/specs", (admin, request, pathParams) -> okForJson(listener.getSpecStatuses()));
+        router.add(POST, "/openapi/reload", (admin, request, pathParams) -> okForJson(listener.getReloader().reloadAll()));
+        router.add(GET, "/openapi/metrics", (admin, request, pathParams) -> okForJson(listener.getMetrics()));
+        router.add(GET, "/openapi/metrics/prometheus", (admin, request, pathParams) -> responseDefinition()
+                .withStatus(200)
+                .withHeader("Content-Type", PrometheusMetricsFormat.CONTENT_TYPE)
+                .withBody(PrometheusMetricsFormat.format(listener))
+                .build());
+        if (listener.getViolations() != null) {
+            router.add(GET, "/openapi/violations", (admin, request, pathParams) -> {
+                try {
+                    return okForJson(listener.getViolations().page(nonNegativeIntParameter(request, "offset", 0),
+                            nonNegativeIntParameter(request, "limit", DEFAULT_PAGE_SIZE)));
+                } catch (final IllegalArgumentException e) {
+                    return jsonResponse(Errors.single(VALIDATION_ERROR, e.getMessage()), HTTP_BAD_REQUEST);
+                }
+            });
+            router.add(DELETE, "/openapi/violations", (admin, request, pathParams) -> {
+                listener.getViolations().reset();
+                return ResponseDefinition.ok();
+            });
+        }
+    }
+
+    /**
+     * @throws IllegalArgumentException if the parameter is given but is not a non-negative integer
+     */
+    private static int nonNegativeIntParameter(final Request request, final String name, final int defaultValue) {
+        final QueryParameter parameter = request.queryParameter(name);
+        if (!parameter.isPresent()) {
+            return defaultValue;
+        }
+        final int value;
+        try {
+            value = Integer.parseInt(parameter.firstValue());
+        } catch (final NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be a non-negative integer", e);
+        }
+        if (value < 0) {
+            throw new IllegalArgumentException(name + " must be a non-negative integer");
+        }
+        return value;
+    }
+}
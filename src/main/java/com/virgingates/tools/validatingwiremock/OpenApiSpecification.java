@@ -0,0 +1,280 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.OpenApiInteractionValidator;
+import com.atlassian.oai.validator.interaction.ApiOperationResolver;
+import com.atlassian.oai.validator.model.ApiOperation;
+import com.atlassian.oai.validator.model.ApiOperationMatch;
+import com.atlassian.oai.validator.model.Request;
+import io.swagger.parser.OpenAPIParser;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.parameters.Parameter;
+import io.swagger.v3.oas.models.responses.ApiResponse;
+import io.swagger.v3.oas.models.security.SecurityScheme;
+import io.swagger.v3.parser.core.models.ParseOptions;
+import io.swagger.v3.parser.core.models.SwaggerParseResult;
+
+import javax.annotation.Nonnull;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A loaded OpenAPI / Swagger definition: the interaction validator built from it, plus an operation resolver
+ * used to attribute interactions to the API operation they target (e.g. {@code GET /pets/{petId}}).
+ * <p>
+ * Instances are immutable, apart from a bounded cache of resolved request paths, and safe to share between container
+ * threads.
+ */
+class OpenApiSpecification {
+
+    static final String UNMATCHED_OPERATION = "<unmatched>";
+
+    private static final AtomicLong GENERATIONS = new AtomicLong();
+    private static final int RESOLVED_PATHS = 4096;
+
+    private final long generation = GENERATIONS.incrementAndGet();
+    private final String location;
+    private final String name;
+    private final OpenApiInteractionValidator validator;
+    private final ApiOperationResolver operationResolver;
+    private final Set<String> requestHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    private final Set<String> responseHeaders = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+    private final Map<Operation, String> operationLabels = new IdentityHashMap<>();
+    private final String unmatchedLabel;
+    private final AtomicReferenceArray<ResolvedPath> resolvedPaths = new AtomicReferenceArray<>(RESOLVED_PATHS);
+    private final SpecCache.Outcome cacheOutcome;
+    private final long loadNanos;
+
+    private OpenApiSpecification(final String location, final String name, final OpenApiInteractionValidator validator,
+                                 final OpenAPI api, final SpecCache.Outcome cacheOutcome, final long loadNanos) {
+        this.location = location;
+        this.name = name;
+        this.validator = validator;
+        this.cacheOutcome = cacheOutcome;
+        this.loadNanos = loadNanos;
+        this.operationResolver = new ApiOperationResolver(api, null);
+        this.unmatchedLabel = label(UNMATCHED_OPERATION);
+        collectHeaders(api);
+        collectOperationLabels(api);
+    }
+
+    /**
+     * Loads the definition at the given path/url (or the inline definition itself).
+     *
+     * @param specUrlOrDefinition the path, url or content of the OpenAPI / Swagger definition
+     * @param name                qualifies the operations of this definition when several are loaded, may be empty
+     */
+    @Nonnull
+    static OpenApiSpecification load(@Nonnull final String specUrlOrDefinition, @Nonnull final String name) {
+        return load(specUrlOrDefinition, name, SpecCache.DISABLED);
+    }
+
+    /**
+     * Loads the definition, from its precompiled copy in the given cache if there is one.
+     *
+     * @param specUrlOrDefinition the path, url or content of the OpenAPI / Swagger definition
+     * @param name                qualifies the operations of this definition when several are loaded, may be empty
+     */
+    @Nonnull
+    static OpenApiSpecification load(@Nonnull final String specUrlOrDefinition, @Nonnull final String name,
+                                     @Nonnull final SpecCache cache) {
+        final long start = System.nanoTime();
+        final SpecCache.Lookup lookup = cache.lookup(specUrlOrDefinition);
+        final OpenApiInteractionValidator validator = OpenApiInteractionValidator.createFor(lookup.location()).build();
+        final OpenAPI api = parse(lookup.location());
+        return new OpenApiSpecification(specUrlOrDefinition, name, validator, api, lookup.outcome(), System.nanoTime() - start);
+    }
+
+    /**
+     * Parses the definition with the same options {@link OpenApiInteractionValidator} uses internally, so that
+     * operations resolve exactly as they do during validation.
+     */
+    private static OpenAPI parse(final String specUrlOrDefinition) {
+        final OpenAPIParser parser = new OpenAPIParser();
+        final ParseOptions parseOptions = new ParseOptions();
+        parseOptions.setResolve(true);
+        parseOptions.setResolveFully(true);
+        parseOptions.setResolveCombinators(false);
+
+        SwaggerParseResult result = parser.readLocation(specUrlOrDefinition, null, parseOptions);
+        if (result == null || result.getOpenAPI() == null) {
+            result = parser.readContents(specUrlOrDefinition, null, parseOptions);
+        }
+        if (result == null || result.getOpenAPI() == null) {
+            throw new IllegalArgumentException("Unable to load API definition from " + specUrlOrDefinition);
+        }
+        return result.getOpenAPI();
+    }
+
+    private void collectHeaders(final OpenAPI api) {
+        requestHeaders.add("Content-Type");
+        requestHeaders.add("Accept");
+        responseHeaders.add("Content-Type");
+
+        if (api.getPaths() != null) {
+            for (final PathItem pathItem : api.getPaths().values()) {
+                collectParameterHeaders(pathItem.getParameters());
+                for (final Operation operation : pathItem.readOperations()) {
+                    collectParameterHeaders(operation.getParameters());
+                    if (operation.getResponses() != null) {
+                        for (final ApiResponse response : operation.getResponses().values()) {
+                            if (response.getHeaders() != null) {
+                                responseHeaders.addAll(response.getHeaders().keySet());
+                            }
+                        }
+                    }
+                }
+            }
+        }
+        if (api.getComponents() != null && api.getComponents().getSecuritySchemes() != null) {
+            for (final SecurityScheme scheme : api.getComponents().getSecuritySchemes().values()) {
+                if (scheme.getType() == SecurityScheme.Type.APIKEY) {
+                    requestHeaders.add(scheme.getIn() == SecurityScheme.In.COOKIE ? "Cookie" : scheme.getName());
+                } else {
+                    requestHeaders.add("Authorization");
+                }
+            }
+        }
+    }
+
+    /**
+     * Builds the label of every operation once, keyed by the parsed operation the resolver hands out again with each
+     * match (the {@link ApiOperation} wrapping it is new every time).
+     */
+    private void collectOperationLabels(final OpenAPI api) {
+        if (api.getPaths() == null) {
+            return;
+        }
+        api.getPaths().forEach((path, pathItem) -> pathItem.readOperationsMap().forEach((method, operation) ->
+                operationLabels.putIfAbsent(operation, label(method + " " + path))));
+    }
+
+    private String label(final String operation) {
+        return name.isEmpty() ? operation : name + " " + operation;
+    }
+
+    private void collectParameterHeaders(final List<Parameter> parameters) {
+        if (parameters == null) {
+            return;
+        }
+        for (final Parameter parameter : parameters) {
+            if ("header".equals(parameter.getIn())) {
+                requestHeaders.add(parameter.getName());
+            } else if ("cookie".equals(parameter.getIn())) {
+                requestHeaders.add("Cookie");
+            }
+        }
+    }
+
+    @Nonnull
+    String location() {
+        return location;
+    }
+
+    /**
+     * @return a number unique to this loaded instance, which tells apart successive loads of the same definition.
+     */
+    long generation() {
+        return generation;
+    }
+
+    /**
+     * @return how long parsing the definition and building its validator took.
+     */
+    long loadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * @return whether the definition was loaded from its precompiled copy.
+     */
+    @Nonnull
+    SpecCache.Outcome cacheOutcome() {
+        return cacheOutcome;
+    }
+
+    @Nonnull
+    OpenApiInteractionValidator validator() {
+        return validator;
+    }
+
+    /**
+     * Resolves the API operation an interaction targets.
+     * <p>
+     * Resolving means matching the path against every path of the definition, so the outcome is kept in a
+     * direct-mapped cache of recently requested methods and paths: a path requested again (whatever its query string)
+     * resolves without allocating, and colliding paths just evict each other.
+     *
+     * @param url the request url, with or without query string
+     * @return the operation as {@code METHOD /path/template}, or {@link #UNMATCHED_OPERATION} if the definition
+     * has no such operation. Both are prefixed with the definition's name, if it has one. Labels are built when the
+     * definition is loaded, so the same operation always yields the same instance.
+     */
+    @Nonnull
+    String operationFor(@Nonnull final String url, @Nonnull final Request.Method method) {
+        final int queryStart = url.indexOf('?');
+        final int pathLength = queryStart < 0 ? url.length() : queryStart;
+        int hash = method.ordinal();
+        for (int i = 0; i < pathLength; i++) {
+            hash = 31 * hash + url.charAt(i);
+        }
+        final int slot = (hash ^ (hash >>> 16)) & (RESOLVED_PATHS - 1);
+        final ResolvedPath cached = resolvedPaths.get(slot);
+        if (cached != null && cached.method == method && cached.path.length() == pathLength
+                && url.regionMatches(0, cached.path, 0, pathLength)) {
+            return cached.label;
+        }
+        final String path = url.substring(0, pathLength);
+        final String label = resolve(path, method);
+        resolvedPaths.set(slot, new ResolvedPath(path, method, label));
+        return label;
+    }
+
+    private String resolve(final String path, final Request.Method method) {
+        final ApiOperationMatch match = operationResolver.findApiOperation(path, method);
+        if (!match.isPathFound() || !match.isOperationAllowed()) {
+            return unmatchedLabel;
+        }
+        final ApiOperation apiOperation = match.getApiOperation();
+        final String label = operationLabels.get(apiOperation.getOperation());
+        return label != null ? label : label(apiOperation.getMethod() + " " + apiOperation.getApiPath().original());
+    }
+
+    /**
+     * @return the names of all request headers whose values can affect validation: declared header (and cookie)
+     * parameters, security scheme headers, {@code Content-Type} and {@code Accept}.
+     */
+    @Nonnull
+    Collection<String> requestHeaders() {
+        return Collections.unmodifiableSet(requestHeaders);
+    }
+
+    /**
+     * @return the names of all response headers whose values can affect validation: declared response headers and
+     * {@code Content-Type}.
+     */
+    @Nonnull
+    Collection<String> responseHeaders() {
+        return Collections.unmodifiableSet(responseHeaders);
+    }
+
+    private static final class ResolvedPath {
+        private final String path;
+        private final Request.Method method;
+        private final String label;
+
+        private ResolvedPath(final String path, final Request.Method method, final String label) {
+            this.path = path;
+            this.method = method;
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2011 Thomas Akehurst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.report.JsonValidationReportFormat;
+import com.atlassian.oai.validator.report.ValidationReport;
+import com.github.tomakehurst.wiremock.common.Notifier;
+import com.github.tomakehurst.wiremock.http.*;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+class OpenApiValidationListener implements RequestListener {
+    private final SpecRouter router;
+    private final ValidationStatistics statistics = new ValidationStatistics();
+    private final AsyncValidationExecutor asyncExecutor;
+    private final ValidationCache cache;
+    private final ValidationSampler sampler;
+    private final BodyPolicy bodyPolicy;
+    private final SpecReloader reloader;
+    private final VerifiedStubs verifiedStubs;
+    private final ViolationJournal violations;
+    private final Notifier notifier;
+
+    public OpenApiValidationListener(final CommandLineOptions options) {
+        router = new SpecRouter(options.openAPISpecBindings(), options.openAPISpecCacheDir() == null
+                ? SpecCache.DISABLED : new SpecCache(Paths.get(options.openAPISpecCacheDir())));
+        asyncExecutor = options.openAPIAsyncValidation()
+                ? new AsyncValidationExecutor(options.openAPIValidationThreads(), options.openAPIValidationQueueSize(),
+                        options.openAPIValidationOverflowPolicy(), options.virtualThreads())
+                : null;
+        cache = options.openAPIValidationCacheSize() > 0 ? new ValidationCache(options.openAPIValidationCacheSize()) : null;
+        sampler = new ValidationSampler(options.openAPISampleRate(), options.openAPIOperationSampleRates(), options.openAPIAlwaysValidateFirst());
+        bodyPolicy = new BodyPolicy(options.openAPIMaxBodySize(), options.openAPISkippedBodyContentTypes());
+        verifiedStubs = options.openAPIVerifyStubs() ? new VerifiedStubs(router, bodyPolicy) : null;
+        violations = options.openAPIViolationJournalSize() > 0 ? new ViolationJournal(options.openAPIViolationJournalSize()) : null;
+        notifier = options.notifier();
+        reloader = new SpecReloader(router, notifier);
+        if (options.openAPIWatch()) {
+            try {
+                reloader.watch();
+            } catch (final IOException e) {
+                notifier.error("Unable to watch OpenApi files for changes", e);
+            }
+        }
+    }
+
+    /**
+     * Validates the interaction, either on the calling container thread or, in async mode, on a background
+     * worker.
+     * <p>
+     * Each interaction gets its own {@link ValidationReport}; nothing mutable is shared between concurrent
+     * requests apart from the lock-free {@link ValidationStatistics} counters.
+     * <p>
+     * Sampling is decided first, from the raw request line, so interactions that are not sampled are neither
+     * copied nor converted for the validator. Responses served by a stub verified at start-up (see
+     * {@link VerifiedStubs}) are not validated again, only their request is.
+     */
+    @Override
+    public void requestReceived(final Request request, final Response response) {
+        // we exclude OPTIONS otherwise we need to provide CORS headers all over Swagger file..
+        if (request.getMethod().equals(RequestMethod.OPTIONS)) {
+            return;
+        }
+        final OpenApiSpecification specification = router.route(SpecRouter.hostOf(request), request.getUrl());
+        if (specification == null) {
+            // not described by any of the definitions
+            return;
+        }
+        final String operation = sampler.dependsOnOperation() ? operationFor(specification, request) : null;
+        if (!sampler.shouldValidate(operation)) {
+            return;
+        }
+        final boolean responseVerified = verifiedStubs != null && verifiedStubs.servedVerifiedResponse(request, specification);
+        if (asyncExecutor == null) {
+            assertValidationPassed(validate(specification, operation, request, response, responseVerified));
+            return;
+        }
+        // Jetty recycles its request objects once the response is sent, so capture an immutable copy first
+        final LoggedRequest capturedRequest = LoggedRequest.createFrom(request);
+        asyncExecutor.submit(() -> reportViolations(validate(specification, operation, capturedRequest, response, responseVerified)));
+    }
+
+    private ValidationReport validate(final OpenApiSpecification specification, final String resolvedOperation,
+                                      final Request request, final Response response, final boolean responseVerified) {
+        final long start = System.nanoTime();
+        final WireMockRequest validatorRequest = WireMockRequest.of(request, bodyPolicy);
+        final WireMockResponse validatorResponse = WireMockResponse.of(response, bodyPolicy);
+        final String operation = resolvedOperation != null ? resolvedOperation : operationFor(specification, request);
+        final ValidationReport report;
+        if (responseVerified) {
+            report = bodyPolicy.withoutSkippedBodies(specification.validator().validateRequest(validatorRequest),
+                    validatorRequest.isBodySkipped(), false);
+        } else if (cache == null) {
+            report = validate(specification, validatorRequest, validatorResponse);
+        } else {
+            report = cache.get(cache.keyFor(specification, operation, validatorRequest, validatorResponse),
+                    () -> validate(specification, validatorRequest, validatorResponse));
+        }
+        // the views convert lazily, while being validated, so conversion time is taken out of the total
+        final long conversionNanos = validatorRequest.conversionNanos() + validatorResponse.conversionNanos();
+        statistics.record(operation, report, conversionNanos, System.nanoTime() - start - conversionNanos);
+        if (violations != null) {
+            violations.record(operation, report);
+        }
+        return report;
+    }
+
+    private ValidationReport validate(final OpenApiSpecification specification,
+                                      final WireMockRequest request, final WireMockResponse response) {
+        final ValidationReport report = specification.validator().validate(request, response);
+        return bodyPolicy.withoutSkippedBodies(report, request.isBodySkipped(), response.isBodySkipped());
+    }
+
+    private static String operationFor(final OpenApiSpecification specification, final Request request) {
+        return specification.operationFor(request.getUrl(),
+                com.atlassian.oai.validator.model.Request.Method.valueOf(request.getMethod().getName()));
+    }
+
+    private void reportViolations(final ValidationReport report) {
+        if (report.hasErrors()) {
+            notifier.error("OpenApi validation failed:\n" + JsonValidationReportFormat.getInstance().apply(report));
+        }
+    }
+
+    /**
+     * @return the validation report cache, or {@code null} when caching is disabled.
+     */
+    ValidationCache getCache() {
+        return cache;
+    }
+
+    SpecRouter getRouter() {
+        return router;
+    }
+
+    /**
+     * @return the stubs verified at start-up, or {@code null} when stubs are not verified.
+     */
+    VerifiedStubs getVerifiedStubs() {
+        return verifiedStubs;
+    }
+
+    /**
+     * @return the journal of distinct violations, or {@code null} when violations are not kept.
+     */
+    ViolationJournal getViolations() {
+        return violations;
+    }
+
+    ValidationSampler getSampler() {
+        return sampler;
+    }
+
+    BodyPolicy getBodyPolicy() {
+        return bodyPolicy;
+    }
+
+    /**
+     * @return the async validation executor, or {@code null} when validating synchronously.
+     */
+    AsyncValidationExecutor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    SpecReloader getReloader() {
+        return reloader;
+    }
+
+    /**
+     * @return the reload status of every definition.
+     */
+    List<Map<String, Object>> getSpecStatuses() {
+        final List<Map<String, Object>> statuses = new ArrayList<>();
+        router.specifications().forEach(specification -> statuses.add(specification.status()));
+        return statuses;
+    }
+
+    /**
+     * @return the validation statistics and latencies, and the sampling, body, async, cache and stub verification
+     * counters, for JSON output.
+     */
+    Map<String, Object> getMetrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        final Map<String, Long> failed = statistics.failedByOperation();
+        final Map<String, ValidationStatistics.Latencies> conversionTimes = statistics.conversionTimeByOperation();
+        final Map<String, ValidationStatistics.Latencies> validationTimes = statistics.validationTimeByOperation();
+        final Map<String, Object> operations = new TreeMap<>();
+        statistics.validatedByOperation().forEach((operation, validated) -> {
+            final Map<String, Object> operationMetrics = new LinkedHashMap<>();
+            operationMetrics.put("validated", validated);
+            operationMetrics.put("failed", failed.getOrDefault(operation, 0L));
+            operationMetrics.put("conversionTime", conversionTimes.get(operation).summary());
+            operationMetrics.put("validationTime", validationTimes.get(operation).summary());
+            operations.put(operation, operationMetrics);
+        });
+        metrics.put("operations", operations);
+        metrics.put("messages", statistics.messagesByKey());
+        metrics.put("sampledOut", sampler.skipped());
+        metrics.put("bodiesSkipped", bodyPolicy.skippedBodies());
+        if (asyncExecutor != null) {
+            final Map<String, Object> async = new LinkedHashMap<>();
+            async.put("queued", asyncExecutor.queued());
+            async.put("dropped", asyncExecutor.dropped());
+            async.put("ranInline", asyncExecutor.ranInline());
+            metrics.put("async", async);
+        }
+        if (cache != null) {
+            final Map<String, Object> cacheMetrics = new LinkedHashMap<>();
+            cacheMetrics.put("hits", cache.stats().hitCount());
+            cacheMetrics.put("misses", cache.stats().missCount());
+            cacheMetrics.put("evictions", cache.stats().evictionCount());
+            metrics.put("cache", cacheMetrics);
+        }
+        if (verifiedStubs != null) {
+            metrics.put("verifiedStubs", verifiedStubs.metrics());
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops the background validation workers and the definition reloader.
+     */
+    public void stop() {
+        reloader.stop();
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Access the validation outcomes aggregated since this listener was created.
+     *
+     * @return the aggregated validation statistics.
+     */
+    public ValidationStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Assert that the given validation report contains no errors and fail if it does.
+     *
+     * @throws OpenApiValidationException if the validation report contains any errors.
+     */
+    private static void assertValidationPassed(final ValidationReport report) {
+        if (report.hasErrors()) {
+            throw new OpenApiValidationException(report);
+        }
+    }
+
+    public static class OpenApiValidationException extends RuntimeException {
+
+        private final ValidationReport report;
+
+        public OpenApiValidationException(final ValidationReport report) {
+            super(JsonValidationReportFormat.getInstance().apply(report));
+            this.report = report;
+        }
+
+        public ValidationReport getValidationReport() {
+            return report;
+        }
+    }
+
+}
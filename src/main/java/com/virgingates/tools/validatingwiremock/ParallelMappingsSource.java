@@ -0,0 +1,531 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.Json;
+import com.github.tomakehurst.wiremock.common.JsonException;
+import com.github.tomakehurst.wiremock.common.Notifier;
+import com.github.tomakehurst.wiremock.common.NotWritableException;
+import com.github.tomakehurst.wiremock.common.SafeNames;
+import com.github.tomakehurst.wiremock.common.TextFile;
+import com.github.tomakehurst.wiremock.standalone.MappingFileException;
+import com.github.tomakehurst.wiremock.standalone.MappingsSource;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.github.tomakehurst.wiremock.stubbing.StubMappingCollection;
+import com.github.tomakehurst.wiremock.stubbing.StubMappings;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * A drop-in replacement for WireMock's {@code JsonFileMappingsSource} that reads and parses the mappings directory in
+ * parallel, on the common fork-join pool. Stubs are still added in the order WireMock would add them, so which stub
+ * wins between equal priorities does not change.
+ * <p>
+ * Given an index file, the stubs of every mapping file are also kept there, compacted to WireMock's normalized JSON,
+ * along with the file's size, modification time and SHA-256 hash. Later starts read unchanged files from the index,
+ * in one sequential read, instead of opening them one by one; a file is only read again when its size or
+ * modification time changed, and only parsed again when its content did. The index is rewritten in the background
+ * after a load that found changes, and ignored when it was written by another WireMock build.
+ * <p>
+ * When watched, changes made to the directory while running are applied to the loaded stubs file by file: stubs of
+ * an edited file are edited in place (keeping their precedence) when their id did not change, added or removed
+ * otherwise. Changes this source makes itself, on behalf of the admin API, are recognized by their hash and skipped.
+ */
+class ParallelMappingsSource implements MappingsSource {
+
+    private static final int INDEX_FORMAT = 1;
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final FileSource mappingsFileSource;
+    private final Path directory;
+    private final Path indexFile;
+    private final Notifier notifier;
+
+    private final Map<String, MappingFile> files = new ConcurrentHashMap<>();
+    private final Map<UUID, String> fileNames = new ConcurrentHashMap<>();
+    private final Map<Path, ScheduledFuture<?>> pendingReloads = new ConcurrentHashMap<>();
+    private ScheduledExecutorService reloadExecutor;
+    private WatchService watchService;
+
+    private volatile long loadNanos;
+    private volatile int filesRead;
+    private volatile int filesParsed;
+
+    /**
+     * @param indexFile where to keep the index of parsed stubs, {@code null} for none
+     */
+    ParallelMappingsSource(@Nonnull final FileSource mappingsFileSource, final Path indexFile,
+                           @Nonnull final Notifier notifier) {
+        this.mappingsFileSource = mappingsFileSource;
+        this.directory = Paths.get(mappingsFileSource.getPath()).toAbsolutePath().normalize();
+        this.indexFile = indexFile;
+        this.notifier = notifier;
+    }
+
+    @Override
+    public synchronized void loadMappingsInto(final StubMappings stubMappings) {
+        final long start = System.nanoTime();
+        files.clear();
+        fileNames.clear();
+        if (!mappingsFileSource.exists()) {
+            return;
+        }
+        final List<String> names = mappingsFileSource.listFilesRecursively().stream()
+                .map(TextFile::getPath)
+                .filter(path -> path.endsWith(".json"))
+                .map(this::nameOf)
+                .collect(Collectors.toList());
+        final Map<String, MappingFile> index = readIndex();
+
+        final List<MappingFile> loaded = names.parallelStream()
+                .map(name -> load(name, index.get(name)))
+                .collect(Collectors.toList());
+        int read = 0;
+        int parsed = 0;
+        for (final MappingFile file : loaded) {
+            for (final StubMapping mapping : file.mappings) {
+                mapping.setDirty(false);
+                stubMappings.addMapping(mapping);
+                fileNames.put(mapping.getId(), file.name);
+            }
+            files.put(file.name, file);
+            read += file.read ? 1 : 0;
+            parsed += file.parsed ? 1 : 0;
+        }
+        filesRead = read;
+        filesParsed = parsed;
+        loadNanos = System.nanoTime() - start;
+
+        if (indexFile != null && (read > 0 || index.size() != loaded.size())) {
+            writeIndexInBackground(loaded);
+        }
+    }
+
+    private MappingFile load(final String name, final MappingFile indexed) {
+        final Path path = directory.resolve(name);
+        try {
+            final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+            final long size = attributes.size();
+            final long lastModified = attributes.lastModifiedTime().toMillis();
+            if (indexed != null && indexed.size == size && indexed.lastModified == lastModified) {
+                return indexed.parsedFromIndex(false);
+            }
+            final byte[] content = Files.readAllBytes(path);
+            final byte[] hash = Hashing.sha256().hashBytes(content).asBytes();
+            if (indexed != null && Arrays.equals(indexed.hash, hash)) {
+                return new MappingFile(name, size, lastModified, hash, indexed.multi, indexed.json).parsedFromIndex(true);
+            }
+            return MappingFile.parse(name, size, lastModified, hash, new String(content, StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            throw new MappingFileException(path.toString(), e.getMessage());
+        }
+    }
+
+    @Override
+    public void save(final List<StubMapping> stubMappings) {
+        for (final StubMapping mapping : stubMappings) {
+            if (mapping != null && mapping.isDirty()) {
+                save(mapping);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void save(final StubMapping stubMapping) {
+        String name = fileNames.get(stubMapping.getId());
+        if (name == null) {
+            name = SafeNames.makeSafeFileName(stubMapping);
+        } else if (isMulti(name)) {
+            throw new NotWritableException("Stubs loaded from multi-mapping files are read-only, and therefore cannot be saved");
+        }
+        final String json = Json.write(stubMapping);
+        mappingsFileSource.writeTextFile(directory.resolve(name).toString(), json);
+        files.put(name, MappingFile.written(directory.resolve(name), name, json, stubMapping));
+        fileNames.put(stubMapping.getId(), name);
+        stubMapping.setDirty(false);
+    }
+
+    @Override
+    public synchronized void remove(final StubMapping stubMapping) {
+        final String name = fileNames.get(stubMapping.getId());
+        if (name == null) {
+            return;
+        }
+        if (isMulti(name)) {
+            throw new NotWritableException("Stubs loaded from multi-mapping files are read-only, and therefore cannot be removed");
+        }
+        mappingsFileSource.deleteFile(directory.resolve(name).toString());
+        files.remove(name);
+        fileNames.remove(stubMapping.getId());
+    }
+
+    private boolean isMulti(final String name) {
+        final MappingFile file = files.get(name);
+        return file != null && file.multi;
+    }
+
+    @Override
+    public synchronized void removeAll() {
+        if (files.values().stream().anyMatch(file -> file.multi)) {
+            throw new NotWritableException("Some stubs were loaded from multi-mapping files which are read-only, so remove all cannot be performed");
+        }
+        // only the files stubs were loaded from or saved to: anything else under the directory is not ours to delete
+        for (final String name : files.keySet()) {
+            mappingsFileSource.deleteFile(directory.resolve(name).toString());
+        }
+        files.clear();
+        fileNames.clear();
+    }
+
+    /**
+     * Starts applying changes made to the mappings directory to the given stubs, which should be those the directory
+     * was loaded into.
+     */
+    void watch(@Nonnull final StubMappings stubMappings) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+        watchService = FileSystems.getDefault().newWatchService();
+        reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "mappings-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+        register(directory);
+        final Thread watcher = new Thread(() -> watchLoop(stubMappings), "mappings-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void register(final Path root) throws IOException {
+        try (Stream<Path> directories = Files.walk(root)) {
+            for (final Path subdirectory : (Iterable<Path>) directories.filter(Files::isDirectory)::iterator) {
+                subdirectory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+            }
+        }
+    }
+
+    private void watchLoop(final StubMappings stubMappings) {
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+                final Path parent = (Path) key.watchable();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path) {
+                        final Path changed = parent.resolve((Path) event.context());
+                        if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed)) {
+                            register(changed);
+                            try (Stream<Path> created = Files.walk(changed)) {
+                                created.filter(Files::isRegularFile).forEach(file -> scheduleReload(stubMappings, file));
+                            }
+                        } else if (changed.toString().endsWith(".json")) {
+                            scheduleReload(stubMappings, changed);
+                        }
+                    }
+                }
+                key.reset();
+            }
+        } catch (final InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        } catch (final IOException e) {
+            notifier.error("Stopped watching " + directory + " for changes", e);
+        }
+    }
+
+    private void scheduleReload(final StubMappings stubMappings, final Path file) {
+        final ScheduledFuture<?> reload = reloadExecutor.schedule(() -> {
+            pendingReloads.remove(file);
+            reload(stubMappings, file);
+        }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        final ScheduledFuture<?> superseded = pendingReloads.put(file, reload);
+        if (superseded != null) {
+            superseded.cancel(false);
+        }
+    }
+
+    private synchronized void reload(final StubMappings stubMappings, final Path file) {
+        final String name = nameOf(file.toString());
+        final MappingFile previous = files.get(name);
+        final MappingFile current;
+        try {
+            current = Files.isRegularFile(file) ? load(name, previous) : null;
+        } catch (final RuntimeException e) {
+            notifier.error("Failed to reload " + file + ", keeping its previous stubs", e);
+            return;
+        }
+        if (previous != null && current != null && !current.parsed) {
+            files.put(name, current);
+            return;
+        }
+
+        final Map<UUID, StubMapping> removed = new LinkedHashMap<>();
+        if (previous != null) {
+            for (final StubMapping mapping : previous.mappings) {
+                removed.put(mapping.getId(), mapping);
+            }
+        }
+        int added = 0;
+        int edited = 0;
+        final List<StubMapping> mappings = current == null ? Collections.emptyList() : current.mappings;
+        for (final StubMapping mapping : mappings) {
+            mapping.setDirty(false);
+            if (removed.remove(mapping.getId()) != null && stubMappings.get(mapping.getId()).isPresent()) {
+                stubMappings.editMapping(mapping);
+                edited++;
+            } else {
+                stubMappings.addMapping(mapping);
+                added++;
+            }
+            fileNames.put(mapping.getId(), name);
+        }
+        for (final StubMapping mapping : removed.values()) {
+            if (stubMappings.get(mapping.getId()).isPresent()) {
+                stubMappings.removeMapping(mapping);
+            }
+            fileNames.remove(mapping.getId());
+        }
+        if (current == null) {
+            files.remove(name);
+        } else {
+            files.put(name, current);
+        }
+        notifier.info("Reloaded mappings file " + name + ": " + added + " added, " + edited + " edited, "
+                + removed.size() + " removed");
+    }
+
+    void stop() {
+        if (reloadExecutor != null) {
+            reloadExecutor.shutdownNow();
+        }
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (final IOException e) {
+                // ignored, shutting down
+            }
+        }
+    }
+
+    long loadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * @return how the last load went, for the start-up timings.
+     */
+    @Nonnull
+    String loadSummary() {
+        return files.size() + " files, " + filesRead + " read, " + filesParsed + " parsed"
+                + (indexFile == null ? "" : ", index " + indexFile);
+    }
+
+    private String nameOf(final String path) {
+        return directory.relativize(Paths.get(path).toAbsolutePath().normalize()).toString();
+    }
+
+    private Map<String, MappingFile> readIndex() {
+        if (indexFile == null || !Files.isRegularFile(indexFile)) {
+            return Collections.emptyMap();
+        }
+        final Map<String, MappingFile> index = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(indexFile))))) {
+            if (in.readInt() != INDEX_FORMAT || !in.readUTF().equals(wireMockBuild())) {
+                return Collections.emptyMap();
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final MappingFile file = MappingFile.readFrom(in);
+                index.put(file.name, file);
+            }
+            return index;
+        } catch (final IOException | RuntimeException e) {
+            notifier.info("Ignoring unreadable mappings index " + indexFile + ": " + e);
+            return Collections.emptyMap();
+        }
+    }
+
+    private void writeIndexInBackground(final List<MappingFile> loaded) {
+        final Thread thread = new Thread(() -> {
+            try {
+                writeIndex(loaded);
+            } catch (final IOException | RuntimeException e) {
+                notifier.error("Unable to write the mappings index to " + indexFile, e);
+            }
+        }, "mappings-index");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void writeIndex(final List<MappingFile> loaded) throws IOException {
+        final Path parent = indexFile.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        final Path temporary = Files.createTempFile(parent, indexFile.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary))))) {
+                out.writeInt(INDEX_FORMAT);
+                out.writeUTF(wireMockBuild());
+                out.writeInt(loaded.size());
+                for (final MappingFile file : loaded) {
+                    file.writeTo(out);
+                }
+            }
+            Files.move(temporary, indexFile, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @return the file WireMock was loaded from and when it was built, since the JSON of its stubs may change with it.
+     */
+    private static String wireMockBuild() {
+        final CodeSource codeSource = StubMapping.class.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            return "unknown";
+        }
+        try {
+            final File file = new File(codeSource.getLocation().toURI());
+            return file.getName() + "@" + file.lastModified();
+        } catch (final URISyntaxException | IllegalArgumentException e) {
+            return codeSource.getLocation().toString();
+        }
+    }
+
+    /**
+     * A mapping file, its stubs and what it looked like when they were loaded.
+     */
+    private static final class MappingFile {
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private final byte[] hash;
+        private final boolean multi;
+        private final List<String> json;
+        private List<StubMapping> mappings = Collections.emptyList();
+        private boolean read;
+        private boolean parsed;
+
+        private MappingFile(final String name, final long size, final long lastModified, final byte[] hash,
+                            final boolean multi, final List<String> json) {
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+            this.multi = multi;
+            this.json = json;
+        }
+
+        static MappingFile parse(final String name, final long size, final long lastModified, final byte[] hash,
+                                 final String content) {
+            final StubMappingCollection collection;
+            try {
+                collection = Json.read(content, StubMappingCollection.class);
+            } catch (final JsonException e) {
+                throw new MappingFileException(name, e.getErrors().first().getDetail());
+            }
+            final List<StubMapping> mappings = new ArrayList<>(collection.getMappingOrMappings());
+            final MappingFile file = new MappingFile(name, size, lastModified, hash, collection.isMulti(),
+                    mappings.stream().map(Json::write).collect(Collectors.toList()));
+            file.mappings = mappings;
+            file.read = true;
+            file.parsed = true;
+            return file;
+        }
+
+        static MappingFile written(final Path path, final String name, final String json, final StubMapping mapping) {
+            final byte[] content = json.getBytes(StandardCharsets.UTF_8);
+            long lastModified = -1;
+            try {
+                lastModified = Files.getLastModifiedTime(path).toMillis();
+            } catch (final IOException e) {
+                // the hash still tells this write apart from later edits
+            }
+            final MappingFile file = new MappingFile(name, content.length, lastModified,
+                    Hashing.sha256().hashBytes(content).asBytes(), false, Collections.singletonList(json));
+            file.mappings = Collections.singletonList(mapping);
+            return file;
+        }
+
+        /**
+         * @return this file with its stubs rebuilt from the index, as new instances for the stub mappings to own.
+         */
+        MappingFile parsedFromIndex(final boolean read) {
+            final MappingFile file = new MappingFile(name, size, lastModified, hash, multi, json);
+            file.mappings = json.stream().map(stub -> Json.read(stub, StubMapping.class)).collect(Collectors.toList());
+            file.read = read;
+            return file;
+        }
+
+        static MappingFile readFrom(final DataInputStream in) throws IOException {
+            final String name = in.readUTF();
+            final long size = in.readLong();
+            final long lastModified = in.readLong();
+            final byte[] hash = new byte[in.readUnsignedByte()];
+            in.readFully(hash);
+            final boolean multi = in.readBoolean();
+            final int count = in.readInt();
+            final List<String> json = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                final byte[] stub = new byte[in.readInt()];
+                in.readFully(stub);
+                json.add(new String(stub, StandardCharsets.UTF_8));
+            }
+            return new MappingFile(name, size, lastModified, hash, multi, json);
+        }
+
+        void writeTo(final DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            out.writeLong(size);
+            out.writeLong(lastModified);
+            out.writeByte(hash.length);
+            out.write(hash);
+            out.writeBoolean(multi);
+            out.writeInt(json.size());
+            for (final String stub : json) {
+                final byte[] bytes = stub.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.virgingates.tools.validatingwiremock;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A trie over url path segments, answering "which value is bound to the longest prefix of this path?" in time
+ * proportional to the depth of the path rather than the number of bound prefixes.
+ * <p>
+ * Prefixes only match on segment boundaries: {@code /orders} matches {@code /orders} and {@code /orders/1}, but
+ * not {@code /ordersummary}. Query strings are ignored. Mutations must be externally synchronized; concurrent
+ * lookups are safe once the trie is no longer modified.
+ *
+ * @param <T> the type of value bound to each prefix
+ */
+class PathPrefixTrie<T> {
+
+    private final Node<T> root = new Node<>();
+
+    /**
+     * Binds a value to a path prefix, replacing any value previously bound to the same prefix.
+     *
+     * @return the previously bound value, or {@code null}
+     */
+    T put(@Nonnull final String prefix, @Nonnull final T value) {
+        final int limit = pathLimit(prefix);
+        Node<T> node = root;
+        int start = segmentStart(prefix, 0, limit);
+        while (start < limit) {
+            final int end = segmentEnd(prefix, start, limit);
+            node = node.children.computeIfAbsent(prefix.substring(start, end), segment -> new Node<>());
+            start = segmentStart(prefix, end, limit);
+        }
+        final T previous = node.value;
+        node.value = value;
+        return previous;
+    }
+
+    /**
+     * @return the value bound to the longest prefix of the path, or {@code null} if no prefix of it is bound.
+     */
+    T longestPrefixMatch(@Nonnull final String path) {
+        final int limit = pathLimit(path);
+        Node<T> node = root;
+        T match = root.value;
+        int start = segmentStart(path, 0, limit);
+        while (start < limit && !node.children.isEmpty()) {
+            final int end = segmentEnd(path, start, limit);
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                match = node.value;
+            }
+            start = segmentStart(path, end, limit);
+        }
+        return match;
+    }
+
+    private static int pathLimit(final String path) {
+        final int query = path.indexOf('?');
+        return query < 0 ? path.length() : query;
+    }
+
+    private static int segmentStart(final String path, int from, final int limit) {
+        while (from < limit && path.charAt(from) == '/') {
+            from++;
+        }
+        return from;
+    }
+
+    private static int segmentEnd(final String path, final int start, final int limit) {
+        final int slash = path.indexOf('/', start);
+        return slash < 0 || slash > limit ? limit : slash;
+    }
+
+    private static class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>();
+        private T value;
+    }
+}
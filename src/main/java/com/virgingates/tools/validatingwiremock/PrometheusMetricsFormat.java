@@ -0,0 +1,167 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.google.common.cache.CacheStats;
+
+import javax.annotation.Nonnull;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Renders the validation metrics of an {@link OpenApiValidationListener}, and those of the {@link ProxyClient} and the
+ * {@link ResponseTemplateCache}, in the Prometheus text exposition format (version 0.0.4). Latencies are exposed as
+ * summaries, in seconds.
+ */
+class PrometheusMetricsFormat {
+
+    static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private PrometheusMetricsFormat() {
+    }
+
+    @Nonnull
+    static String format(@Nonnull final OpenApiValidationListener listener) {
+        final StringBuilder out = new StringBuilder();
+        final ValidationStatistics statistics = listener.getStatistics();
+
+        header(out, "openapi_validations_total", "counter", "Interactions validated, by operation.");
+        statistics.validatedByOperation().forEach((operation, count) ->
+                sample(out, "openapi_validations_total", "operation", operation, count));
+        header(out, "openapi_validation_failures_total", "counter", "Interactions that failed validation, by operation.");
+        statistics.failedByOperation().forEach((operation, count) ->
+                sample(out, "openapi_validation_failures_total", "operation", operation, count));
+        header(out, "openapi_validation_messages_total", "counter", "Validation messages reported, by message key.");
+        statistics.messagesByKey().forEach((key, count) ->
+                sample(out, "openapi_validation_messages_total", "key", key, count));
+
+        summary(out, "openapi_validation_conversion_seconds",
+                "Time spent converting interactions for the validator, by operation.",
+                statistics.conversionTimeByOperation());
+        summary(out, "openapi_validation_seconds",
+                "Time spent validating interactions (or looking them up in the cache), by operation.",
+                statistics.validationTimeByOperation());
+
+        header(out, "openapi_validation_sampled_out_total", "counter", "Interactions not validated because of sampling.");
+        sample(out, "openapi_validation_sampled_out_total", null, null, listener.getSampler().skipped());
+        header(out, "openapi_validation_bodies_skipped_total", "counter", "Bodies left out of validation because of their size or content type.");
+        sample(out, "openapi_validation_bodies_skipped_total", null, null, listener.getBodyPolicy().skippedBodies());
+
+        final AsyncValidationExecutor asyncExecutor = listener.getAsyncExecutor();
+        if (asyncExecutor != null) {
+            header(out, "openapi_validation_queued", "gauge", "Interactions waiting for async validation.");
+            sample(out, "openapi_validation_queued", null, null, asyncExecutor.queued());
+            header(out, "openapi_validation_dropped_total", "counter", "Interactions dropped because the async validation queue was full.");
+            sample(out, "openapi_validation_dropped_total", null, null, asyncExecutor.dropped());
+            header(out, "openapi_validation_ran_inline_total", "counter", "Interactions validated on the container thread because the async validation queue was full.");
+            sample(out, "openapi_validation_ran_inline_total", null, null, asyncExecutor.ranInline());
+        }
+
+        final ValidationCache cache = listener.getCache();
+        if (cache != null) {
+            header(out, "openapi_validation_cache_hits_total", "counter", "Validation reports served from the cache.");
+            sample(out, "openapi_validation_cache_hits_total", null, null, cache.stats().hitCount());
+            header(out, "openapi_validation_cache_misses_total", "counter", "Validation reports not found in the cache.");
+            sample(out, "openapi_validation_cache_misses_total", null, null, cache.stats().missCount());
+            header(out, "openapi_validation_cache_evictions_total", "counter", "Validation reports evicted because the cache was full.");
+            sample(out, "openapi_validation_cache_evictions_total", null, null, cache.stats().evictionCount());
+        }
+
+        final VerifiedStubs verifiedStubs = listener.getVerifiedStubs();
+        if (verifiedStubs != null) {
+            header(out, "openapi_validation_verified_responses_total", "counter", "Responses not validated again because their stub was verified at startup.");
+            sample(out, "openapi_validation_verified_responses_total", null, null, verifiedStubs.responsesNotRevalidated());
+        }
+        return out.toString();
+    }
+
+    /**
+     * Renders the connection pool gauges of the proxy client, per proxy target, or its request counters with HTTP/2.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    static String format(@Nonnull final ProxyClient proxyClient) {
+        final StringBuilder out = new StringBuilder();
+        final Map<String, Object> metrics = proxyClient.metrics();
+        final Map<String, Map<String, Object>> hosts =
+                (Map<String, Map<String, Object>>) metrics.getOrDefault("hosts", Collections.emptyMap());
+        if (proxyClient.isHttp2()) {
+            byHost(out, hosts, "inFlight", "proxy_requests_in_flight", "gauge", "Proxied requests waiting for a response, by target.");
+            byHost(out, hosts, "requests", "proxy_requests_total", "counter", "Requests proxied, by target.");
+            header(out, "proxy_responses_total", "counter", "Proxied responses, by HTTP version.");
+            ((Map<String, Long>) metrics.get("protocols")).forEach((protocol, count) ->
+                    sample(out, "proxy_responses_total", "protocol", protocol, count));
+        } else {
+            byHost(out, hosts, "maxConnections", "proxy_connections_max", "gauge", "Connections allowed, by target.");
+            byHost(out, hosts, "leased", "proxy_connections_leased", "gauge", "Connections serving a proxied request, by target.");
+            byHost(out, hosts, "available", "proxy_connections_available", "gauge", "Idle connections kept for reuse, by target.");
+            byHost(out, hosts, "pending", "proxy_connections_pending", "gauge", "Proxied requests waiting for a connection, by target.");
+        }
+        return out.toString();
+    }
+
+    /**
+     * Renders how many responses were rendered or skipped, and how well the compiled templates are cached.
+     */
+    @Nonnull
+    static String format(@Nonnull final ResponseTemplateCache templateCache) {
+        final StringBuilder out = new StringBuilder();
+        header(out, "response_templates_skipped_total", "counter", "Responses served without rendering, their stub having no template expression.");
+        sample(out, "response_templates_skipped_total", null, null, templateCache.skipped());
+        header(out, "response_templates_rendered_total", "counter", "Responses rendered with cached templates.");
+        sample(out, "response_templates_rendered_total", null, null, templateCache.rendered());
+        header(out, "response_templates_uncached_total", "counter", "Responses rendered by WireMock, another transformer having changed them first.");
+        sample(out, "response_templates_uncached_total", null, null, templateCache.uncached());
+
+        final CacheStats stats = templateCache.stats();
+        header(out, "response_template_cache_size", "gauge", "Compiled templates in the cache.");
+        sample(out, "response_template_cache_size", null, null, templateCache.size());
+        header(out, "response_template_cache_hits_total", "counter", "Templates found compiled in the cache.");
+        sample(out, "response_template_cache_hits_total", null, null, stats.hitCount());
+        header(out, "response_template_cache_misses_total", "counter", "Templates compiled because they were not in the cache.");
+        sample(out, "response_template_cache_misses_total", null, null, stats.missCount());
+        header(out, "response_template_cache_evictions_total", "counter", "Compiled templates evicted because the cache was full.");
+        sample(out, "response_template_cache_evictions_total", null, null, stats.evictionCount());
+        return out.toString();
+    }
+
+    private static void byHost(final StringBuilder out, final Map<String, Map<String, Object>> hosts, final String key,
+                               final String name, final String type, final String help) {
+        header(out, name, type, help);
+        hosts.forEach((host, metrics) -> sample(out, name, "host", host, ((Number) metrics.get(key)).longValue()));
+    }
+
+    private static void summary(final StringBuilder out, final String name, final String help,
+                                final Map<String, ValidationStatistics.Latencies> latenciesByOperation) {
+        header(out, name, "summary", help);
+        latenciesByOperation.forEach((operation, latencies) -> {
+            for (final double quantile : QUANTILES) {
+                out.append(name).append("{operation=\"").append(escape(operation))
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(latencies.percentileMicros(quantile * 100) / 1e6).append('\n');
+            }
+            out.append(name).append("_sum{operation=\"").append(escape(operation)).append("\"} ")
+                    .append(latencies.totalNanos() / 1e9).append('\n');
+            out.append(name).append("_count{operation=\"").append(escape(operation)).append("\"} ")
+                    .append(latencies.count()).append('\n');
+        });
+    }
+
+    private static void header(final StringBuilder out, final String name, final String type, final String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(final StringBuilder out, final String name, final String label, final String value,
+                               final long count) {
+        out.append(name);
+        if (label != null) {
+            out.append('{').append(label).append("=\"").append(escape(value)).append("\"}");
+        }
+        out.append(' ').append(count).append('\n');
+    }
+
+    private static String escape(final String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,35 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.admin.Router;
+import com.github.tomakehurst.wiremock.extension.AdminApiExtension;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.responseDefinition;
+import static com.github.tomakehurst.wiremock.http.RequestMethod.GET;
+import static com.github.tomakehurst.wiremock.http.ResponseDefinition.okForJson;
+
+/**
+ * Admin API routes for the proxy client, under {@code /__admin/proxy}.
+ */
+class ProxyAdminApi implements AdminApiExtension {
+
+    private final ProxyClient proxyClient;
+
+    ProxyAdminApi(final ProxyClient proxyClient) {
+        this.proxyClient = proxyClient;
+    }
+
+    @Override
+    public String getName() {
+        return "proxy-client-admin";
+    }
+
+    @Override
+    public void contributeAdminApiRoutes(final Router router) {
+        router.add(GET, "/proxy/metrics", (admin, request, pathParams) -> okForJson(proxyClient.metrics()));
+        router.add(GET, "/proxy/metrics/prometheus", (admin, request, pathParams) -> responseDefinition()
+                .withStatus(200)
+                .withHeader("Content-Type", PrometheusMetricsFormat.CONTENT_TYPE)
+                .withBody(PrometheusMetricsFormat.format(proxyClient))
+                .build());
+    }
+}
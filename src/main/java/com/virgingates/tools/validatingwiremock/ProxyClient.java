@@ -0,0 +1,164 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.common.ProxySettings;
+import wiremock.org.apache.http.HttpHost;
+import wiremock.org.apache.http.client.config.RequestConfig;
+import wiremock.org.apache.http.conn.routing.HttpRoute;
+import wiremock.org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import wiremock.org.apache.http.pool.PoolStats;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tunes the HTTP client WireMock proxies requests with, which has no configuration of its own: it allows 5
+ * connections per upstream host (the {@code http.maxConnections} default), waits 5 minutes for a response and keeps
+ * idle connections for as long as the upstream lets it.
+ * <p>
+ * The connection pool and default request timeouts of WireMock's client are reconfigured in place, so everything else
+ * about proxying (trust store, {@code --proxy-via}, host header handling) stays WireMock's. With {@code --proxy-http2},
+ * the client is replaced by {@link Http2ProxyClient} instead.
+ */
+class ProxyClient {
+
+    private final CommandLineOptions options;
+    private PoolingHttpClientConnectionManager pool;
+    private Http2ProxyClient http2Client;
+    private ScheduledExecutorService evictor;
+
+    ProxyClient(@Nonnull final CommandLineOptions options) {
+        this.options = options;
+    }
+
+    /**
+     * Reconfigures, or replaces, the proxy client of the server.
+     */
+    void install(@Nonnull final WireMockServer server) throws ReflectiveOperationException, IOException {
+        final Object stubRequestHandler = WireMockInternals.read(server, "stubRequestHandler");
+        final Object stubResponseRenderer = WireMockInternals.read(stubRequestHandler, "responseRenderer");
+        final Object proxyResponseRenderer = WireMockInternals.read(stubResponseRenderer, "proxyResponseRenderer");
+        final Object client = WireMockInternals.read(proxyResponseRenderer, "client");
+
+        if (options.proxyHttp2()) {
+            http2Client = new Http2ProxyClient(options.proxyConnectTimeout(), options.proxyTimeout(),
+                    options.proxyKeepAlive(), options.proxyVia(), options.httpsSettings().trustStore(), options.proxyHttp2Insecure());
+            WireMockInternals.write(proxyResponseRenderer, "client", http2Client);
+            ((Closeable) client).close();
+            return;
+        }
+
+        pool = (PoolingHttpClientConnectionManager) WireMockInternals.read(client, "connManager");
+        if (options.proxyMaxConnections() > 0) {
+            pool.setMaxTotal(options.proxyMaxConnections());
+        }
+        final HttpHost proxy = options.proxyVia() == ProxySettings.NO_PROXY ? null
+                : new HttpHost(options.proxyVia().host(), options.proxyVia().port());
+        for (final Map.Entry<String, Integer> maxConnections : options.proxyMaxConnectionsPerHost().entrySet()) {
+            if (maxConnections.getKey().isEmpty()) {
+                pool.setDefaultMaxPerRoute(maxConnections.getValue());
+            } else {
+                for (final HttpRoute route : routesTo(maxConnections.getKey(), proxy)) {
+                    pool.setMaxPerRoute(route, maxConnections.getValue());
+                }
+            }
+        }
+
+        final RequestConfig.Builder config = RequestConfig.copy((RequestConfig) WireMockInternals.read(client, "defaultConfig"));
+        if (options.proxyConnectTimeout() >= 0) {
+            config.setConnectTimeout(options.proxyConnectTimeout());
+        }
+        if (options.proxyTimeout() >= 0) {
+            config.setSocketTimeout(options.proxyTimeout());
+        }
+        if (options.proxyPoolTimeout() >= 0) {
+            config.setConnectionRequestTimeout(options.proxyPoolTimeout());
+        }
+        WireMockInternals.write(client, "defaultConfig", config.build());
+
+        final long keepAlive = options.proxyKeepAlive();
+        if (keepAlive >= 0) {
+            evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, "proxy-connection-evictor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            final long period = Math.max(keepAlive / 2, 100);
+            evictor.scheduleWithFixedDelay(() -> {
+                pool.closeExpiredConnections();
+                pool.closeIdleConnections(keepAlive, TimeUnit.MILLISECONDS);
+            }, period, period, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * @return the routes the pool may use to reach {@code host[:port]}, over http and https.
+     */
+    private static List<HttpRoute> routesTo(final String hostAndPort, final HttpHost proxy) {
+        final int separator = hostAndPort.lastIndexOf(':');
+        final String host = separator < 0 ? hostAndPort : hostAndPort.substring(0, separator);
+        final int port = separator < 0 ? -1 : Integer.parseInt(hostAndPort.substring(separator + 1));
+        final HttpHost http = new HttpHost(host, port < 0 ? 80 : port, "http");
+        final HttpHost https = new HttpHost(host, port < 0 ? 443 : port, "https");
+        return proxy == null
+                ? Arrays.asList(new HttpRoute(http, null, false), new HttpRoute(https, null, true))
+                : Arrays.asList(new HttpRoute(http, null, proxy, false), new HttpRoute(https, null, proxy, true));
+    }
+
+    /**
+     * @return whether proxied requests go through {@link Http2ProxyClient} rather than a connection pool.
+     */
+    boolean isHttp2() {
+        return http2Client != null;
+    }
+
+    /**
+     * @return the connections of the pool by state, in total and per upstream, or the requests in flight per upstream
+     * and the responses per protocol with HTTP/2, for JSON output.
+     */
+    @Nonnull
+    Map<String, Object> metrics() {
+        if (http2Client != null) {
+            return http2Client.metrics();
+        }
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        if (pool == null) {
+            return metrics;
+        }
+        final PoolStats total = pool.getTotalStats();
+        metrics.put("maxConnections", total.getMax());
+        metrics.put("leased", total.getLeased());
+        metrics.put("available", total.getAvailable());
+        metrics.put("pending", total.getPending());
+        final Map<String, Object> hosts = new TreeMap<>();
+        for (final HttpRoute route : pool.getRoutes()) {
+            final PoolStats stats = pool.getStats(route);
+            final Map<String, Object> host = new LinkedHashMap<>();
+            host.put("maxConnections", stats.getMax());
+            host.put("leased", stats.getLeased());
+            host.put("available", stats.getAvailable());
+            host.put("pending", stats.getPending());
+            hosts.put(route.getTargetHost().toURI(), host);
+        }
+        metrics.put("hosts", hosts);
+        return metrics;
+    }
+
+    void stop() {
+        if (evictor != null) {
+            evictor.shutdownNow();
+        }
+        if (http2Client != null) {
+            http2Client.close();
+        }
+    }
+}
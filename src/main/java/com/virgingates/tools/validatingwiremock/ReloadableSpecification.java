@@ -0,0 +1,84 @@
+package com.virgingates.tools.validatingwiremock;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The current {@link OpenApiSpecification} for a {@link SpecBinding}, which can be rebuilt from its source without
+ * interrupting validation.
+ * <p>
+ * A reload parses the definition and builds its validator on the calling (background) thread, then publishes it with
+ * a single volatile write. Interactions already being validated finish against the definition they started with.
+ */
+class ReloadableSpecification {
+
+    private final SpecBinding binding;
+    private final String name;
+    private final SpecCache cache;
+    private volatile OpenApiSpecification current;
+
+    private volatile long reloads;
+    private volatile long failures;
+    private volatile long lastReloadMillis = -1;
+    private volatile long lastReloadedAt = -1;
+    private volatile String lastFailure;
+
+    ReloadableSpecification(@Nonnull final SpecBinding binding, @Nonnull final String name, @Nonnull final SpecCache cache) {
+        this.binding = binding;
+        this.name = name;
+        this.cache = cache;
+        this.current = OpenApiSpecification.load(binding.location(), name, cache);
+    }
+
+    @Nonnull
+    OpenApiSpecification get() {
+        return current;
+    }
+
+    @Nonnull
+    SpecBinding binding() {
+        return binding;
+    }
+
+    /**
+     * Rebuilds the definition from its source and swaps it in. On failure the current definition stays in use.
+     *
+     * @throws RuntimeException if the definition could not be loaded
+     */
+    synchronized void reload() {
+        final long start = System.nanoTime();
+        try {
+            final OpenApiSpecification reloaded = OpenApiSpecification.load(binding.location(), name, cache);
+            current = reloaded;
+            reloads++;
+        } catch (final RuntimeException e) {
+            failures++;
+            lastFailure = e.getMessage();
+            throw e;
+        } finally {
+            lastReloadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            lastReloadedAt = System.currentTimeMillis();
+        }
+    }
+
+    long lastReloadMillis() {
+        return lastReloadMillis;
+    }
+
+    /**
+     * @return the reload history of this definition, for the admin API.
+     */
+    @Nonnull
+    Map<String, Object> status() {
+        final Map<String, Object> status = new LinkedHashMap<>();
+        status.put("binding", binding.toString());
+        status.put("reloads", reloads);
+        status.put("failures", failures);
+        status.put("lastReloadMillis", lastReloadMillis);
+        status.put("lastReloadedAt", lastReloadedAt);
+        status.put("lastFailure", lastFailure);
+        return status;
+    }
+}
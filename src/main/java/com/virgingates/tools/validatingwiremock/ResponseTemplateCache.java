@@ -0,0 +1,312 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.common.Json;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.HandlebarsOptimizedTemplate;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.RequestTemplateModel;
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.HttpHeaders;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import wiremock.com.fasterxml.jackson.databind.JsonNode;
+import wiremock.com.github.jknack.handlebars.Handlebars;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.github.tomakehurst.wiremock.common.Exceptions.throwUnchecked;
+
+/**
+ * Renders response templates in place of WireMock's {@link ResponseTemplateTransformer}, with a bounded cache of
+ * compiled templates and without rendering anything for stubs that have no template expression.
+ * <p>
+ * WireMock's own cache is unbounded by default, keys templates by the whole response definition (hashing the body on
+ * every request) and keys body files by name only, so edits to a body file are never picked up. Here templates are
+ * keyed by stub id and part of the response, body files by stub id, file name and a 128 bit digest of their contents,
+ * and a stub's entries are invalidated when it is edited or removed. Eviction is size based and approximately least
+ * recently used.
+ * <p>
+ * A stub whose body, body file name, headers and proxy url have no {@code {{}, and whose body file (if templated) has
+ * none either, is served as it is: no request model is built and the response definition is not copied.
+ * <p>
+ * Only stubs served as they were defined go through the cache; should another transformer have changed the response
+ * definition first, WireMock's transformer renders it.
+ */
+class ResponseTemplateCache {
+
+    private static final HashFunction DIGEST = Hashing.murmur3_128();
+    private static final String EXPRESSION = "{{";
+    private static final String DISABLE_BODY_FILE_TEMPLATING = "disableBodyFileTemplating";
+
+    private final long maximumSize;
+    private final Cache<Key, Optional<HandlebarsOptimizedTemplate>> templates;
+    private final Map<UUID, Boolean> plainDefinitions = new ConcurrentHashMap<>();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder rendered = new LongAdder();
+    private final LongAdder uncached = new LongAdder();
+
+    private ResponseTemplateTransformer transformer;
+    private Handlebars handlebars;
+
+    ResponseTemplateCache(final long maximumSize) {
+        this.maximumSize = maximumSize;
+        templates = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Takes over from the transformer, compiling templates with its Handlebars instance and so its helpers.
+     */
+    void bind(@Nonnull final ResponseTemplateTransformer transformer) throws ReflectiveOperationException {
+        this.handlebars = (Handlebars) WireMockInternals.read(transformer, "handlebars");
+        this.transformer = transformer;
+    }
+
+    /**
+     * @return whether responses the transformer applies to are rendered here instead.
+     */
+    boolean handles(final Object transformer) {
+        return transformer != null && transformer == this.transformer;
+    }
+
+    @Nonnull
+    ResponseDefinition transform(@Nonnull final StubMapping stub, @Nonnull final Request request,
+                                 @Nonnull final ResponseDefinition responseDefinition, @Nonnull final FileSource files,
+                                 @Nonnull final Parameters parameters) {
+        final UUID id = stub.getUuid();
+        if (id == null || responseDefinition != stub.getResponse()) {
+            uncached.increment();
+            return transformer.transform(request, responseDefinition, files, parameters);
+        }
+
+        final boolean inlineBody = responseDefinition.specifiesTextBodyContent();
+        final boolean templatedBodyFile = !inlineBody && responseDefinition.specifiesBodyFile()
+                && !parameters.getBoolean(DISABLE_BODY_FILE_TEMPLATING, false);
+        String bodyFile = null;
+        if (plainDefinitions.computeIfAbsent(id, key -> !hasExpressions(responseDefinition))) {
+            if (!templatedBodyFile) {
+                skipped.increment();
+                return responseDefinition;
+            }
+            bodyFile = files.getTextFileNamed(responseDefinition.getBodyFileName()).readContentsAsString();
+            if (!bodyFileTemplate(id, responseDefinition.getBodyFileName(), bodyFile).isPresent()) {
+                skipped.increment();
+                return responseDefinition;
+            }
+        }
+        rendered.increment();
+
+        final Map<String, Object> model = new LinkedHashMap<>();
+        model.put("parameters", parameters);
+        model.put("request", RequestTemplateModel.from(request));
+
+        final ResponseDefinitionBuilder builder = ResponseDefinitionBuilder.like(responseDefinition);
+        if (inlineBody) {
+            final String body = render(template(id, "body", responseDefinition.getTextBody()), responseDefinition.getTextBody(), model);
+            if (responseDefinition.getJsonBody() != null) {
+                builder.withJsonBody(Json.read(body, JsonNode.class));
+            } else {
+                builder.withBody(body);
+            }
+        } else if (responseDefinition.specifiesBodyFile()) {
+            final String fileName = render(template(id, "bodyFileName", responseDefinition.getBodyFileName()),
+                    responseDefinition.getBodyFileName(), model);
+            if (templatedBodyFile) {
+                if (bodyFile == null) {
+                    bodyFile = files.getTextFileNamed(fileName).readContentsAsString();
+                }
+                builder.withBody(render(bodyFileTemplate(id, fileName, bodyFile), bodyFile, model));
+            } else {
+                builder.withBodyFile(fileName);
+            }
+        }
+
+        if (responseDefinition.getHeaders() != null) {
+            final List<HttpHeader> headers = new ArrayList<>();
+            for (final HttpHeader header : responseDefinition.getHeaders().all()) {
+                final List<String> values = new ArrayList<>(header.values().size());
+                for (int i = 0; i < header.values().size(); i++) {
+                    final String value = header.values().get(i);
+                    values.add(render(template(id, "header " + header.key() + " " + i, value), value, model));
+                }
+                headers.add(new HttpHeader(header.key(), values));
+            }
+            builder.withHeaders(new HttpHeaders(headers));
+        }
+
+        if (responseDefinition.getProxyBaseUrl() != null) {
+            builder.proxiedFrom(render(template(id, "proxyBaseUrl", responseDefinition.getProxyBaseUrl()),
+                    responseDefinition.getProxyBaseUrl(), model));
+        }
+        return builder.build();
+    }
+
+    private static boolean hasExpressions(final ResponseDefinition responseDefinition) {
+        if (responseDefinition.specifiesTextBodyContent() && responseDefinition.getTextBody().contains(EXPRESSION)) {
+            return true;
+        }
+        if (responseDefinition.getBodyFileName() != null && responseDefinition.getBodyFileName().contains(EXPRESSION)) {
+            return true;
+        }
+        if (responseDefinition.getProxyBaseUrl() != null && responseDefinition.getProxyBaseUrl().contains(EXPRESSION)) {
+            return true;
+        }
+        if (responseDefinition.getHeaders() != null) {
+            for (final HttpHeader header : responseDefinition.getHeaders().all()) {
+                for (final String value : header.values()) {
+                    if (value.contains(EXPRESSION)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private Optional<HandlebarsOptimizedTemplate> template(final UUID stub, final String part, final String source) {
+        return compiled(new Key(stub, part, null), source);
+    }
+
+    private Optional<HandlebarsOptimizedTemplate> bodyFileTemplate(final UUID stub, final String fileName, final String contents) {
+        return compiled(new Key(stub, "bodyFile " + fileName, DIGEST.hashString(contents, StandardCharsets.UTF_8)), contents);
+    }
+
+    /**
+     * @return the compiled template, or nothing if the source has no expression and renders as it is.
+     */
+    private Optional<HandlebarsOptimizedTemplate> compiled(final Key key, final String source) {
+        try {
+            return templates.get(key, () -> source.contains(EXPRESSION)
+                    ? Optional.of(new HandlebarsOptimizedTemplate(handlebars, source))
+                    : Optional.empty());
+        } catch (final ExecutionException | UncheckedExecutionException e) {
+            Throwables.throwIfUnchecked(e.getCause());
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private static String render(final Optional<HandlebarsOptimizedTemplate> template, final String source,
+                                 final Map<String, Object> model) {
+        if (!template.isPresent()) {
+            return source;
+        }
+        try {
+            return template.get().apply(model);
+        } catch (final IOException e) {
+            return throwUnchecked(e, String.class);
+        }
+    }
+
+    /**
+     * Drops the templates of a stub, after it was added, edited or removed.
+     */
+    void invalidate(@Nonnull final UUID stub) {
+        plainDefinitions.remove(stub);
+        templates.asMap().keySet().removeIf(key -> key.stub.equals(stub));
+    }
+
+    void invalidateAll() {
+        plainDefinitions.clear();
+        templates.invalidateAll();
+    }
+
+    /**
+     * @return hit, miss and eviction counts of compiled templates since the cache was created.
+     */
+    @Nonnull
+    CacheStats stats() {
+        return templates.stats();
+    }
+
+    /**
+     * @return the responses served without rendering, rendered through the cache and rendered by WireMock, and the
+     * cache statistics, for JSON output.
+     */
+    @Nonnull
+    Map<String, Object> metrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        metrics.put("skipped", skipped.sum());
+        metrics.put("rendered", rendered.sum());
+        metrics.put("uncached", uncached.sum());
+        final CacheStats stats = templates.stats();
+        final Map<String, Object> cache = new LinkedHashMap<>();
+        cache.put("size", templates.size());
+        cache.put("maximumSize", maximumSize);
+        cache.put("hits", stats.hitCount());
+        cache.put("misses", stats.missCount());
+        cache.put("hitRate", stats.hitRate());
+        cache.put("evictions", stats.evictionCount());
+        metrics.put("cache", cache);
+        return metrics;
+    }
+
+    long skipped() {
+        return skipped.sum();
+    }
+
+    long rendered() {
+        return rendered.sum();
+    }
+
+    long uncached() {
+        return uncached.sum();
+    }
+
+    long size() {
+        return templates.size();
+    }
+
+    private static final class Key {
+        private final UUID stub;
+        private final String part;
+        private final HashCode contents;
+
+        private Key(final UUID stub, final String part, final HashCode contents) {
+            this.stub = stub;
+            this.part = part;
+            this.contents = contents;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return stub.equals(key.stub) && part.equals(key.part) && Objects.equals(contents, key.contents);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(stub, part, contents);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.virgingates.tools.validatingwiremock;
+
+import javax.annotation.Nonnull;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An OpenAPI definition bound to the part of the traffic it describes, as given to {@code --openapi-file}:
+ * <ul>
+ *     <li>{@code orders.yaml} validates all traffic;</li>
+ *     <li>{@code /orders=orders.yaml} validates traffic whose path starts with {@code /orders};</li>
+ *     <li>{@code orders.local=orders.yaml} validates traffic for the {@code orders.local} host, and
+ *     {@code orders.local:8080=orders.yaml} only that addressed to its port 8080 (as given in the {@code Host}
+ *     header);</li>
+ *     <li>{@code orders.local/v2=orders.yaml} combines both.</li>
+ * </ul>
+ */
+class SpecBinding {
+
+    private static final Pattern BINDING = Pattern.compile("^([A-Za-z0-9.-]+(?::\\d+)?)?(/[^=]*)?=(.+)$");
+
+    private final String host;
+    private final String pathPrefix;
+    private final String location;
+
+    private SpecBinding(final String host, final String pathPrefix, final String location) {
+        this.host = host;
+        this.pathPrefix = pathPrefix;
+        this.location = location;
+    }
+
+    @Nonnull
+    static SpecBinding parse(@Nonnull final String option) {
+        final Matcher matcher = BINDING.matcher(option);
+        if (!matcher.matches() || (matcher.group(1) == null && matcher.group(2) == null)) {
+            return new SpecBinding(null, "/", option);
+        }
+        final String host = matcher.group(1) == null ? null : matcher.group(1).toLowerCase(Locale.ROOT);
+        final String pathPrefix = matcher.group(2) == null ? "/" : matcher.group(2);
+        return new SpecBinding(host, pathPrefix, matcher.group(3));
+    }
+
+    /**
+     * @return the (lower case) host this definition is bound to, or {@code null} if it applies to any host.
+     */
+    String host() {
+        return host;
+    }
+
+    @Nonnull
+    String pathPrefix() {
+        return pathPrefix;
+    }
+
+    /**
+     * @return the path, url or content of the definition.
+     */
+    @Nonnull
+    String location() {
+        return location;
+    }
+
+    /**
+     * @return whether this definition only applies to part of the traffic.
+     */
+    boolean isScoped() {
+        return host != null || !"/".equals(pathPrefix);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final SpecBinding that = (SpecBinding) o;
+        return Objects.equals(host, that.host) && pathPrefix.equals(that.pathPrefix) && location.equals(that.location);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(host, pathPrefix, location);
+    }
+
+    @Override
+    public String toString() {
+        return isScoped() ? (host == null ? "" : host) + ("/".equals(pathPrefix) && host != null ? "" : pathPrefix) + "=" + location : location;
+    }
+}
@@ -0,0 +1,200 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import io.swagger.parser.OpenAPIParser;
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.parser.core.models.ParseOptions;
+import io.swagger.v3.parser.core.models.SwaggerParseResult;
+
+import javax.annotation.Nonnull;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps precompiled copies of OpenAPI definition files on disk, so that later starts skip the slow part of loading
+ * them.
+ * <p>
+ * A definition is precompiled by parsing it, converting it to OpenAPI 3 if it is a Swagger 2 definition, inlining
+ * the files it {@code $ref}erences and writing the result as a single JSON document. Loading that copy saves YAML
+ * parsing (about half the load time of a large definition), the Swagger 2 conversion and reading referenced files.
+ * Internal references are kept, since a fully resolved copy is several times larger and slower to load than the
+ * original. For the same reason, self-contained OpenAPI 3 JSON files are loaded as they are.
+ * <p>
+ * Entries are keyed by a SHA-256 hash of the definition, of every local file it references (transitively) and of the
+ * parser version, so an edit to any of them is a miss. Remote references are keyed by url only. On a miss the
+ * definition is loaded from its source as usual and precompiled in the background, so a cold start is no slower.
+ */
+class SpecCache {
+
+    static final SpecCache DISABLED = new SpecCache(null);
+
+    /**
+     * How a definition was found in the cache.
+     */
+    enum Outcome {
+        HIT, MISS, NOT_NEEDED, DISABLED
+    }
+
+    private static final Pattern EXTERNAL_REF = Pattern.compile("\\$ref[\"']?\\s*:\\s*[\"']?([^\"'#\\s,}]+)");
+    private static final Pattern SWAGGER_2 = Pattern.compile("[\"']?swagger[\"']?\\s*:");
+    private static final String PARSER_VERSION = String.valueOf(OpenAPIParser.class.getPackage().getImplementationVersion());
+
+    private final Path directory;
+
+    /**
+     * @param directory where precompiled definitions are kept, created if necessary; {@code null} disables caching
+     */
+    SpecCache(final Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Looks up the precompiled copy of a definition, scheduling its precompilation on a miss.
+     *
+     * @param specUrlOrDefinition the path, url or content of the definition, as given to {@code --openapi-file}
+     */
+    @Nonnull
+    Lookup lookup(@Nonnull final String specUrlOrDefinition) {
+        if (directory == null) {
+            return new Lookup(specUrlOrDefinition, Outcome.DISABLED);
+        }
+        final Path file = localFile(specUrlOrDefinition);
+        if (file == null) {
+            return new Lookup(specUrlOrDefinition, Outcome.NOT_NEEDED);
+        }
+        try {
+            final String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            final Set<String> references = new LinkedHashSet<>();
+            if (isSelfContainedOpenApi3Json(content, file, references)) {
+                return new Lookup(specUrlOrDefinition, Outcome.NOT_NEEDED);
+            }
+            final Path entry = directory.resolve(key(content, references) + ".json");
+            if (Files.isRegularFile(entry)) {
+                return new Lookup(entry.toString(), Outcome.HIT);
+            }
+            precompileInBackground(specUrlOrDefinition, entry);
+            return new Lookup(specUrlOrDefinition, Outcome.MISS);
+        } catch (final IOException e) {
+            return new Lookup(specUrlOrDefinition, Outcome.NOT_NEEDED);
+        }
+    }
+
+    private static Path localFile(final String specUrlOrDefinition) {
+        if (specUrlOrDefinition.contains("\n") || specUrlOrDefinition.matches("^[a-zA-Z][a-zA-Z0-9+.-]+://.*")) {
+            return null;
+        }
+        try {
+            final Path file = Paths.get(specUrlOrDefinition);
+            return Files.isRegularFile(file) ? file : null;
+        } catch (final InvalidPathException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Collects the local files and urls the definition references, transitively, into {@code references}.
+     *
+     * @return whether loading the definition as it is would be as fast as loading a precompiled copy.
+     */
+    private static boolean isSelfContainedOpenApi3Json(final String content, final Path file,
+                                                       final Set<String> references) throws IOException {
+        collectReferences(content, file, references);
+        return references.isEmpty() && content.trim().startsWith("{") && !SWAGGER_2.matcher(content).find();
+    }
+
+    private static void collectReferences(final String content, final Path file, final Set<String> references) throws IOException {
+        final Matcher matcher = EXTERNAL_REF.matcher(content);
+        while (matcher.find()) {
+            final String reference = matcher.group(1);
+            if (reference.contains("://")) {
+                references.add(reference);
+                continue;
+            }
+            final Path referenced = file.toAbsolutePath().resolveSibling(reference).normalize();
+            if (references.add(referenced.toString()) && Files.isRegularFile(referenced)) {
+                collectReferences(new String(Files.readAllBytes(referenced), StandardCharsets.UTF_8), referenced, references);
+            }
+        }
+    }
+
+    private static String key(final String content, final Set<String> references) throws IOException {
+        final Hasher hasher = Hashing.sha256().newHasher()
+                .putString(PARSER_VERSION, StandardCharsets.UTF_8)
+                .putString(content, StandardCharsets.UTF_8);
+        for (final String reference : references) {
+            hasher.putString(reference, StandardCharsets.UTF_8);
+            final Path file = reference.contains("://") ? null : Paths.get(reference);
+            if (file != null && Files.isRegularFile(file)) {
+                hasher.putBytes(Files.readAllBytes(file));
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    private void precompileInBackground(final String specUrlOrDefinition, final Path entry) {
+        final Thread thread = new Thread(() -> {
+            try {
+                precompile(specUrlOrDefinition, entry);
+            } catch (final IOException | RuntimeException e) {
+                // the definition is loaded from its source until a later start manages to precompile it
+            }
+        }, "openapi-spec-cache");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void precompile(final String specUrlOrDefinition, final Path entry) throws IOException {
+        final ParseOptions parseOptions = new ParseOptions();
+        parseOptions.setResolve(true);
+        final SwaggerParseResult result = new OpenAPIParser().readLocation(specUrlOrDefinition, null, parseOptions);
+        final OpenAPI api = result == null ? null : result.getOpenAPI();
+        if (api == null) {
+            return;
+        }
+        Files.createDirectories(directory);
+        final Path temporary = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+        try {
+            Files.write(temporary, Json.mapper().writeValueAsBytes(api));
+            Files.move(temporary, entry, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Where to load a definition from, and why.
+     */
+    static final class Lookup {
+        private final String location;
+        private final Outcome outcome;
+
+        private Lookup(final String location, final Outcome outcome) {
+            this.location = location;
+            this.outcome = outcome;
+        }
+
+        /**
+         * @return the precompiled copy on a hit, the definition as given otherwise.
+         */
+        @Nonnull
+        String location() {
+            return location;
+        }
+
+        @Nonnull
+        Outcome outcome() {
+            return outcome;
+        }
+    }
+}
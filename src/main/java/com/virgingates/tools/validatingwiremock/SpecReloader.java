@@ -0,0 +1,150 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.common.Notifier;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+/**
+ * Reloads OpenAPI definitions in the background, on demand (see {@link OpenApiAdminApi}) or whenever a watched
+ * definition file changes on disk.
+ * <p>
+ * Reloads run one at a time on a dedicated thread. File changes are debounced, since editors and build tools tend to
+ * write a file in several steps. Only the definition file itself is watched, not files it {@code $ref}erences.
+ */
+class SpecReloader {
+
+    private static final long DEBOUNCE_MILLIS = 500;
+
+    private final SpecRouter router;
+    private final Notifier notifier;
+    private final ScheduledExecutorService reloadExecutor;
+    private final Map<ReloadableSpecification, ScheduledFuture<?>> pendingReloads = new ConcurrentHashMap<>();
+    private WatchService watchService;
+
+    SpecReloader(@Nonnull final SpecRouter router, @Nonnull final Notifier notifier) {
+        this.router = router;
+        this.notifier = notifier;
+        this.reloadExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "openapi-spec-reloader");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Reloads every definition and waits for the reloads to finish.
+     *
+     * @return the reload status of every definition.
+     */
+    @Nonnull
+    List<Map<String, Object>> reloadAll() {
+        final List<Map<String, Object>> statuses = new ArrayList<>();
+        final Future<?> reloads = reloadExecutor.submit(() -> router.specifications().forEach(this::reload));
+        try {
+            reloads.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            notifier.error("OpenApi reload failed", e.getCause());
+        }
+        router.specifications().forEach(specification -> statuses.add(specification.status()));
+        return statuses;
+    }
+
+    /**
+     * Starts watching the definitions that are local files for changes.
+     */
+    void watch() throws IOException {
+        final Map<Path, List<ReloadableSpecification>> watchedFiles = new HashMap<>();
+        for (final ReloadableSpecification specification : router.specifications()) {
+            final File file = new File(specification.binding().location());
+            if (file.isFile()) {
+                watchedFiles.computeIfAbsent(file.toPath().toAbsolutePath().normalize(), path -> new ArrayList<>()).add(specification);
+            }
+        }
+        if (watchedFiles.isEmpty()) {
+            return;
+        }
+
+        watchService = FileSystems.getDefault().newWatchService();
+        for (final Path file : watchedFiles.keySet()) {
+            file.getParent().register(watchService, ENTRY_CREATE, ENTRY_MODIFY);
+        }
+        final Thread watcher = new Thread(() -> watchLoop(watchedFiles), "openapi-spec-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    private void watchLoop(final Map<Path, List<ReloadableSpecification>> watchedFiles) {
+        try {
+            while (true) {
+                final WatchKey key = watchService.take();
+                final Path directory = (Path) key.watchable();
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.context() instanceof Path) {
+                        final List<ReloadableSpecification> changed = watchedFiles.get(directory.resolve((Path) event.context()));
+                        if (changed != null) {
+                            changed.forEach(this::scheduleReload);
+                        }
+                    }
+                }
+                key.reset();
+            }
+        } catch (final InterruptedException | ClosedWatchServiceException e) {
+            // stopped
+        }
+    }
+
+    private void scheduleReload(final ReloadableSpecification specification) {
+        final ScheduledFuture<?> reload = reloadExecutor.schedule(() -> {
+            pendingReloads.remove(specification);
+            reload(specification);
+        }, DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+        final ScheduledFuture<?> superseded = pendingReloads.put(specification, reload);
+        if (superseded != null) {
+            superseded.cancel(false);
+        }
+    }
+
+    private void reload(final ReloadableSpecification specification) {
+        try {
+            specification.reload();
+            notifier.info("Reloaded OpenApi file " + specification.binding() + " in " + specification.lastReloadMillis() + "ms");
+        } catch (final RuntimeException e) {
+            notifier.error("Failed to reload OpenApi file " + specification.binding() + ", still validating against the previous version", e);
+        }
+    }
+
+    void stop() {
+        reloadExecutor.shutdownNow();
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (final IOException e) {
+                // ignored, shutting down
+            }
+        }
+    }
+}
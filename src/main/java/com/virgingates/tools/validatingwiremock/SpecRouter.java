@@ -0,0 +1,100 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.Request;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Dispatches interactions to the {@link OpenApiSpecification} bound to their host and path.
+ * <p>
+ * Host bindings take precedence over host-independent ones, and {@code host:port} bindings over bare host ones; within
+ * each, the longest bound path prefix wins.
+ * Lookups go through a {@link PathPrefixTrie} per host, so their cost does not grow with the number of
+ * definitions.
+ */
+class SpecRouter {
+
+    private final Map<String, PathPrefixTrie<ReloadableSpecification>> byHost = new HashMap<>();
+    private final PathPrefixTrie<ReloadableSpecification> anyHost = new PathPrefixTrie<>();
+    private final List<ReloadableSpecification> specifications = new ArrayList<>();
+
+    /**
+     * @param cache where to look for precompiled copies of the definitions
+     */
+    SpecRouter(@Nonnull final Collection<SpecBinding> bindings, @Nonnull final SpecCache cache) {
+        final boolean qualifyOperations = bindings.size() > 1;
+        for (final SpecBinding binding : bindings) {
+            final ReloadableSpecification specification =
+                    new ReloadableSpecification(binding, qualifyOperations ? binding.toString() : "", cache);
+            final PathPrefixTrie<ReloadableSpecification> trie =
+                    binding.host() == null ? anyHost : byHost.computeIfAbsent(binding.host(), host -> new PathPrefixTrie<>());
+            if (trie.put(binding.pathPrefix(), specification) != null) {
+                throw new IllegalArgumentException("More than one OpenApi file is bound to " + binding);
+            }
+            specifications.add(specification);
+        }
+    }
+
+    /**
+     * @return the host and port the request was addressed to, as given in its {@code Host} header, or the server name
+     * it was received on if it has none.
+     */
+    static String hostOf(@Nonnull final Request request) {
+        final HttpHeader host = request.header("Host");
+        return host != null && host.isPresent() ? host.firstValue() : request.getHost();
+    }
+
+    /**
+     * @param host the host the interaction was addressed to, optionally with a port, may be {@code null}
+     * @param url  the request url, with or without query string
+     * @return the definition the interaction should be validated against, or {@code null} if none applies.
+     */
+    OpenApiSpecification route(final String host, @Nonnull final String url) {
+        ReloadableSpecification specification = null;
+        if (host != null && !byHost.isEmpty()) {
+            final String lowerCaseHost = host.toLowerCase(Locale.ROOT);
+            specification = routeToHost(lowerCaseHost, url);
+            final int port = lowerCaseHost.lastIndexOf(':');
+            if (specification == null && port > lowerCaseHost.lastIndexOf(']')) {
+                specification = routeToHost(lowerCaseHost.substring(0, port), url);
+            }
+        }
+        if (specification == null) {
+            specification = anyHost.longestPrefixMatch(url);
+        }
+        return specification == null ? null : specification.get();
+    }
+
+    private ReloadableSpecification routeToHost(final String host, final String url) {
+        final PathPrefixTrie<ReloadableSpecification> hostTrie = byHost.get(host);
+        return hostTrie == null ? null : hostTrie.longestPrefixMatch(url);
+    }
+
+    /**
+     * @return the hosts, with or without a port, that have a definition bound to the url.
+     */
+    @Nonnull
+    Set<String> hostsBoundTo(@Nonnull final String url) {
+        final Set<String> hosts = new TreeSet<>();
+        byHost.forEach((host, hostTrie) -> {
+            if (hostTrie.longestPrefixMatch(url) != null) {
+                hosts.add(host);
+            }
+        });
+        return hosts;
+    }
+
+    @Nonnull
+    List<ReloadableSpecification> specifications() {
+        return specifications;
+    }
+}
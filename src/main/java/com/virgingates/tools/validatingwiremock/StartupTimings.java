@@ -0,0 +1,58 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.google.common.base.Strings;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long each phase of starting the server took, printed after the options so that slow starts can be told apart
+ * from slow definitions.
+ * <p>
+ * Phases are consecutive: each one ends where the next begins. Details, such as the load time of each definition,
+ * are listed under the phase they belong to.
+ */
+class StartupTimings {
+
+    private final long start = System.nanoTime();
+    private final List<String> lines = new ArrayList<>();
+    private final List<String> details = new ArrayList<>();
+    private long phaseStart = start;
+
+    /**
+     * Ends the current phase, which started when the previous one ended.
+     */
+    void phase(@Nonnull final String name) {
+        final long now = System.nanoTime();
+        lines.add(line("Startup " + name, millis(now - phaseStart) + " ms"));
+        lines.addAll(details);
+        details.clear();
+        phaseStart = now;
+    }
+
+    /**
+     * Adds a detail line to the phase in progress, listed under it.
+     */
+    void detail(@Nonnull final String name, final long nanos, @Nonnull final String description) {
+        details.add(line("  " + name, millis(nanos) + " ms, " + description));
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder timings = new StringBuilder();
+        for (final String line : lines) {
+            timings.append(line);
+        }
+        return timings.append(line("Startup total", millis(phaseStart - start) + " ms")).toString();
+    }
+
+    private static long millis(final long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static String line(final String label, final Object value) {
+        return label + ":" + Strings.repeat(" ", Math.max(1, 29 - label.length())) + value + "\n";
+    }
+}
@@ -0,0 +1,35 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.admin.Router;
+import com.github.tomakehurst.wiremock.extension.AdminApiExtension;
+
+import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.responseDefinition;
+import static com.github.tomakehurst.wiremock.http.RequestMethod.GET;
+import static com.github.tomakehurst.wiremock.http.ResponseDefinition.okForJson;
+
+/**
+ * Admin API routes for the response template cache, under {@code /__admin/templates}.
+ */
+class TemplateAdminApi implements AdminApiExtension {
+
+    private final ResponseTemplateCache templateCache;
+
+    TemplateAdminApi(final ResponseTemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    @Override
+    public String getName() {
+        return "response-template-admin";
+    }
+
+    @Override
+    public void contributeAdminApiRoutes(final Router router) {
+        router.add(GET, "/templates/metrics", (admin, request, pathParams) -> okForJson(templateCache.metrics()));
+        router.add(GET, "/templates/metrics/prometheus", (admin, request, pathParams) -> responseDefinition()
+                .withStatus(200)
+                .withHeader("Content-Type", PrometheusMetricsFormat.CONTENT_TYPE)
+                .withBody(PrometheusMetricsFormat.format(templateCache))
+                .build());
+    }
+}
@@ -0,0 +1,112 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.report.ValidationReport;
+import com.github.tomakehurst.wiremock.http.HttpHeader;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.Response;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import javax.annotation.Nonnull;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Supplier;
+
+/**
+ * A bounded cache of validation reports, so that identical interactions (the same request against the same
+ * stubbed response) are only validated against the schema once.
+ * <p>
+ * Interactions are keyed by a 128 bit digest of everything validation depends on: the loaded definition, the
+ * operation, method and url (path parameters and query string are validated too), the request and response headers
+ * the definition can refer to, both bodies (as far as the {@link BodyPolicy} reads them) and the response status.
+ * Eviction is size based and approximately least recently used, so entries for a definition that has since been
+ * reloaded simply age out.
+ */
+class ValidationCache {
+
+    private static final HashFunction DIGEST = Hashing.murmur3_128();
+
+    private final Cache<HashCode, ValidationReport> reports;
+
+    ValidationCache(final long maximumSize) {
+        reports = CacheBuilder.newBuilder()
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+    }
+
+    /**
+     * Returns the cached report for the interaction, running (and caching) the validation on a miss.
+     */
+    @Nonnull
+    ValidationReport get(@Nonnull final HashCode key, @Nonnull final Supplier<ValidationReport> validation) {
+        ValidationReport report = reports.getIfPresent(key);
+        if (report == null) {
+            report = validation.get();
+            reports.put(key, report);
+        }
+        return report;
+    }
+
+    @Nonnull
+    HashCode keyFor(@Nonnull final OpenApiSpecification specification, @Nonnull final String operation,
+                    @Nonnull final WireMockRequest validatorRequest, @Nonnull final WireMockResponse validatorResponse) {
+        final Request request = validatorRequest.originalRequest();
+        final Response response = validatorResponse.originalResponse();
+        final Hasher hasher = DIGEST.newHasher();
+        hasher.putLong(specification.generation());
+        putString(hasher, operation);
+        putString(hasher, request.getMethod().getName());
+        putString(hasher, request.getUrl());
+        for (final String name : specification.requestHeaders()) {
+            putHeader(hasher, request.header(name));
+        }
+        putBody(hasher, validatorRequest.bodyBytes());
+
+        hasher.putInt(response.getStatus());
+        for (final String name : specification.responseHeaders()) {
+            putHeader(hasher, response.getHeaders().getHeader(name));
+        }
+        putBody(hasher, validatorResponse.bodyBytes());
+        return hasher.hash();
+    }
+
+    private static void putHeader(final Hasher hasher, final HttpHeader header) {
+        if (header == null || !header.isPresent()) {
+            hasher.putInt(-1);
+            return;
+        }
+        hasher.putInt(header.values().size());
+        for (final String value : header.values()) {
+            putString(hasher, value);
+        }
+    }
+
+    private static void putString(final Hasher hasher, final String value) {
+        hasher.putInt(value.length()).putString(value, StandardCharsets.UTF_8);
+    }
+
+    private static void putBody(final Hasher hasher, final byte[] body) {
+        if (body == null) {
+            hasher.putInt(-1);
+            return;
+        }
+        if (BodyPolicy.isSkipped(body)) {
+            hasher.putInt(-2);
+            return;
+        }
+        hasher.putInt(body.length).putBytes(body);
+    }
+
+    /**
+     * @return hit, miss and eviction counts since the cache was created.
+     */
+    @Nonnull
+    CacheStats stats() {
+        return reports.stats();
+    }
+}
@@ -0,0 +1,107 @@
+package com.virgingates.tools.validatingwiremock;
+
+import javax.annotation.Nonnull;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which interactions are validated when only a sample of the traffic should be.
+ * <p>
+ * Each operation is validated at the global rate unless it has a rate of its own, and the first interactions of
+ * every operation can be validated regardless of rate. Decisions are lock-free and, once an operation has been seen,
+ * allocation-free themselves; resolving the operation is too only when the definition has the request's path in its
+ * cache (see {@link OpenApiSpecification#operationFor}). When neither per-operation rates nor "always validate the
+ * first N" are configured, the decision does not depend on the operation at all, so callers can skip resolving it.
+ */
+class ValidationSampler {
+
+    private final double rate;
+    private final Map<String, Double> operationRates;
+    private final long alwaysValidateFirst;
+    private final ConcurrentMap<String, OperationSampler> operations = new ConcurrentHashMap<>();
+    private final LongAdder skipped = new LongAdder();
+
+    ValidationSampler(final double rate, @Nonnull final Map<String, Double> operationRates, final long alwaysValidateFirst) {
+        this.rate = rate;
+        this.operationRates = new HashMap<>(operationRates);
+        this.alwaysValidateFirst = alwaysValidateFirst;
+    }
+
+    /**
+     * @return whether {@link #shouldValidate(String)} needs the actual operation, rather than {@code null}.
+     */
+    boolean dependsOnOperation() {
+        return !operationRates.isEmpty() || alwaysValidateFirst > 0;
+    }
+
+    /**
+     * @param operation the operation targeted by the interaction; may be {@code null} unless
+     *                  {@link #dependsOnOperation()}
+     */
+    boolean shouldValidate(final String operation) {
+        final boolean validate;
+        if (operation == null || !dependsOnOperation()) {
+            validate = sample(rate);
+        } else {
+            validate = samplerFor(operation).shouldValidate();
+        }
+        if (!validate) {
+            skipped.increment();
+        }
+        return validate;
+    }
+
+    /**
+     * @return the number of interactions skipped by sampling.
+     */
+    long skipped() {
+        return skipped.sum();
+    }
+
+    private OperationSampler samplerFor(final String operation) {
+        final OperationSampler sampler = operations.get(operation);
+        return sampler != null ? sampler : operations.computeIfAbsent(operation,
+                key -> new OperationSampler(rateFor(key)));
+    }
+
+    /**
+     * Operations given a rate without naming their definition match the operation in every definition.
+     */
+    private double rateFor(final String operation) {
+        final Double operationRate = operationRates.get(operation);
+        if (operationRate != null) {
+            return operationRate;
+        }
+        for (final Map.Entry<String, Double> entry : operationRates.entrySet()) {
+            if (operation.endsWith(" " + entry.getKey())) {
+                return entry.getValue();
+            }
+        }
+        return rate;
+    }
+
+    private static boolean sample(final double rate) {
+        return rate >= 1.0 || (rate > 0.0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+
+    private class OperationSampler {
+        private final double rate;
+        private final AtomicLong seen = new AtomicLong();
+
+        private OperationSampler(final double rate) {
+            this.rate = rate;
+        }
+
+        private boolean shouldValidate() {
+            if (seen.get() < alwaysValidateFirst && seen.getAndIncrement() < alwaysValidateFirst) {
+                return true;
+            }
+            return sample(rate);
+        }
+    }
+}
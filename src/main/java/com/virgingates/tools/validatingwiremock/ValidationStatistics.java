@@ -0,0 +1,185 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.report.ValidationReport;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import javax.annotation.Nonnull;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregated validation outcomes, counted per API operation and per validation message key, and validation latencies
+ * per API operation.
+ * <p>
+ * Every counter is a {@link LongAdder} held in a {@link ConcurrentHashMap}, so container threads recording
+ * outcomes concurrently never serialize on a shared field or lock. Latencies go into fixed-size
+ * {@link ConcurrentHistogram}s, in microseconds with two significant digits, which record without locking or
+ * allocating. Reads are weakly consistent snapshots.
+ */
+class ValidationStatistics {
+
+    private static final long HIGHEST_TRACKABLE_MICROS = TimeUnit.MINUTES.toMicros(1);
+
+    private final ConcurrentMap<String, OperationCounters> operations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, LongAdder> messageKeys = new ConcurrentHashMap<>();
+
+    /**
+     * Records the outcome of validating a single interaction against the given operation.
+     *
+     * @param operation       the operation's label, as returned by {@link OpenApiSpecification#operationFor}: the
+     *                        same instance for every interaction, with its hash code cached, so finding its counters
+     *                        costs no string building or comparison
+     * @param conversionNanos the time spent converting the interaction for the validator
+     * @param validationNanos the time spent validating it, or looking it up in the cache
+     */
+    void record(@Nonnull final String operation, @Nonnull final ValidationReport report,
+                final long conversionNanos, final long validationNanos) {
+        final OperationCounters counters = countersFor(operation);
+        counters.validated.increment();
+        counters.conversionTime.record(conversionNanos);
+        counters.validationTime.record(validationNanos);
+        if (report.hasErrors()) {
+            counters.failed.increment();
+        }
+        for (final ValidationReport.Message message : report.getMessages()) {
+            if (message.getLevel() != ValidationReport.Level.IGNORE) {
+                adderFor(messageKeys, message.getKey()).increment();
+            }
+        }
+    }
+
+    /**
+     * @return the number of interactions validated so far, per operation.
+     */
+    @Nonnull
+    Map<String, Long> validatedByOperation() {
+        final Map<String, Long> snapshot = new TreeMap<>();
+        operations.forEach((operation, counters) -> snapshot.put(operation, counters.validated.sum()));
+        return snapshot;
+    }
+
+    /**
+     * @return the number of interactions that failed validation so far, per operation.
+     */
+    @Nonnull
+    Map<String, Long> failedByOperation() {
+        final Map<String, Long> snapshot = new TreeMap<>();
+        operations.forEach((operation, counters) -> snapshot.put(operation, counters.failed.sum()));
+        return snapshot;
+    }
+
+    /**
+     * @return the number of reported (non-ignored) validation messages so far, per message key.
+     */
+    @Nonnull
+    Map<String, Long> messagesByKey() {
+        final Map<String, Long> snapshot = new TreeMap<>();
+        messageKeys.forEach((key, adder) -> snapshot.put(key, adder.sum()));
+        return snapshot;
+    }
+
+    /**
+     * @return the distribution of the time spent converting interactions for the validator, per operation.
+     */
+    @Nonnull
+    Map<String, Latencies> conversionTimeByOperation() {
+        final Map<String, Latencies> snapshot = new TreeMap<>();
+        operations.forEach((operation, counters) -> snapshot.put(operation, counters.conversionTime.snapshot()));
+        return snapshot;
+    }
+
+    /**
+     * @return the distribution of the time spent validating interactions, per operation.
+     */
+    @Nonnull
+    Map<String, Latencies> validationTimeByOperation() {
+        final Map<String, Latencies> snapshot = new TreeMap<>();
+        operations.forEach((operation, counters) -> snapshot.put(operation, counters.validationTime.snapshot()));
+        return snapshot;
+    }
+
+    private OperationCounters countersFor(final String operation) {
+        final OperationCounters counters = operations.get(operation);
+        return counters != null ? counters : operations.computeIfAbsent(operation, key -> new OperationCounters());
+    }
+
+    private static LongAdder adderFor(final ConcurrentMap<String, LongAdder> adders, final String key) {
+        final LongAdder adder = adders.get(key);
+        return adder != null ? adder : adders.computeIfAbsent(key, ignored -> new LongAdder());
+    }
+
+    private static class OperationCounters {
+        private final LongAdder validated = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private final LatencyRecorder conversionTime = new LatencyRecorder();
+        private final LatencyRecorder validationTime = new LatencyRecorder();
+    }
+
+    private static class LatencyRecorder {
+        private final Histogram histogram = new ConcurrentHistogram(HIGHEST_TRACKABLE_MICROS, 2);
+        private final LongAdder totalNanos = new LongAdder();
+
+        private void record(final long nanos) {
+            totalNanos.add(nanos);
+            histogram.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(Math.max(nanos, 0)), HIGHEST_TRACKABLE_MICROS));
+        }
+
+        private Latencies snapshot() {
+            return new Latencies(histogram.copy(), totalNanos.sum());
+        }
+    }
+
+    /**
+     * A snapshot of the latency distribution of one operation.
+     */
+    static class Latencies {
+        private final Histogram histogram;
+        private final long totalNanos;
+
+        private Latencies(final Histogram histogram, final long totalNanos) {
+            this.histogram = histogram;
+            this.totalNanos = totalNanos;
+        }
+
+        long count() {
+            return histogram.getTotalCount();
+        }
+
+        long totalNanos() {
+            return totalNanos;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         */
+        long percentileMicros(final double percentile) {
+            return histogram.getValueAtPercentile(percentile);
+        }
+
+        long maxMicros() {
+            return histogram.getMaxValue();
+        }
+
+        /**
+         * @return the count, mean, percentiles and maximum in microseconds, for JSON output.
+         */
+        @Nonnull
+        Map<String, Object> summary() {
+            final Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("count", count());
+            summary.put("meanMicros", count() == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalNanos / count()));
+            summary.put("p50Micros", percentileMicros(50));
+            summary.put("p90Micros", percentileMicros(90));
+            summary.put("p99Micros", percentileMicros(99));
+            summary.put("p999Micros", percentileMicros(99.9));
+            summary.put("maxMicros", maxMicros());
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.report.ValidationReport;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.tomakehurst.wiremock.common.FileSource;
+import com.github.tomakehurst.wiremock.extension.Parameters;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.http.HttpHeaders;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.Response;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.matching.EqualToPattern;
+import com.github.tomakehurst.wiremock.matching.MultiValuePattern;
+import com.github.tomakehurst.wiremock.matching.RequestPattern;
+import com.github.tomakehurst.wiremock.stubbing.StubMapping;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Validates the responses of the loaded stub mappings once, at start-up, so that serving them does not validate the
+ * same static response over and over: interactions served by a verified stub only have their request validated.
+ * <p>
+ * Only stubs whose response is fully known up front are verified: a fixed method and a literal url or url path,
+ * no proxying, fault or response transformer, and a body given inline or as a file. Stubs are verified in parallel,
+ * on the common fork-join pool, against the definition their url routes to, for the host their {@code Host} header is
+ * matched against if it is matched against a single value. Stubs whose url is only bound to definitions of specific
+ * hosts, and that could be served for any of them, are not verified.
+ * <p>
+ * Request listeners are not told which stub served an interaction, so this is also a global transformer that notes
+ * it, by identity of the stub's response definition, as the stub is served. A verification only holds for the
+ * definition it was made against: once that definition is reloaded, or when the request's host routes it to another
+ * one, the response is validated as usual. Stubs added or edited after start-up are not verified.
+ */
+class VerifiedStubs extends ResponseDefinitionTransformer {
+
+    static final String NAME = "openapi-verified-stubs";
+
+    /**
+     * What became of a stub at start-up.
+     */
+    enum Outcome {
+        VERIFIED("verified"), FAILED("failed"), NOT_VERIFIABLE("notVerifiable");
+
+        private final String label;
+
+        Outcome(final String label) {
+            this.label = label;
+        }
+    }
+
+    private final SpecRouter router;
+    private final BodyPolicy bodyPolicy;
+    private final Cache<Request, Long> servedRequests = CacheBuilder.newBuilder().weakKeys().build();
+    private final LongAdder responsesNotRevalidated = new LongAdder();
+    private volatile Map<ResponseDefinition, Long> verifiedResponses = Collections.emptyMap();
+    private volatile Map<Outcome, Long> outcomes = Collections.emptyMap();
+
+    VerifiedStubs(@Nonnull final SpecRouter router, @Nonnull final BodyPolicy bodyPolicy) {
+        this.router = router;
+        this.bodyPolicy = bodyPolicy;
+    }
+
+    /**
+     * Verifies the responses of the given stubs, replacing any earlier verification.
+     *
+     * @param files                  where stubs' body files are read from
+     * @param transformedGlobally    whether a global transformer may change any stub's response, in which case no
+     *                               stub can be verified
+     * @return the verification of every stub, in the given order.
+     */
+    @Nonnull
+    List<Map<String, Object>> verify(@Nonnull final Collection<StubMapping> stubs, @Nonnull final FileSource files,
+                                     final boolean transformedGlobally) {
+        final List<Verification> verifications = stubs.parallelStream()
+                .map(stub -> verify(stub, files, transformedGlobally))
+                .collect(Collectors.toList());
+
+        final Map<ResponseDefinition, Long> verified = new IdentityHashMap<>();
+        final Map<Outcome, Long> counts = new LinkedHashMap<>();
+        for (final Outcome outcome : Outcome.values()) {
+            counts.put(outcome, 0L);
+        }
+        for (final Verification verification : verifications) {
+            counts.merge(verification.outcome, 1L, Long::sum);
+            if (verification.outcome == Outcome.VERIFIED) {
+                verified.put(verification.stub.getResponse(), verification.generation);
+            }
+        }
+        verifiedResponses = verified;
+        outcomes = counts;
+        return verifications.stream().map(Verification::toMap).collect(Collectors.toList());
+    }
+
+    private Verification verify(final StubMapping stub, final FileSource files, final boolean transformedGlobally) {
+        final RequestPattern request = stub.getRequest();
+        final ResponseDefinition response = stub.getResponse();
+        if (transformedGlobally) {
+            return Verification.notVerifiable(stub, "a global response transformer is installed");
+        }
+        final String reason = whyNotVerifiable(stub);
+        if (reason != null) {
+            return Verification.notVerifiable(stub, reason);
+        }
+        final String url = request.getUrl() != null ? request.getUrl() : request.getUrlPath();
+        final OpenApiSpecification specification = router.route(hostOf(request), url);
+        if (specification == null) {
+            final Set<String> hosts = router.hostsBoundTo(url);
+            return Verification.notVerifiable(stub, hosts.isEmpty() ? "no OpenApi file is bound to its url"
+                    : "its url is only bound to OpenApi files of specific hosts (" + String.join(", ", hosts)
+                    + "), and it does not match its Host header against one of them");
+        }
+
+        final WireMockResponse validatorResponse;
+        try {
+            validatorResponse = WireMockResponse.of(stubbedResponse(response, files), bodyPolicy);
+        } catch (final RuntimeException e) {
+            return Verification.notVerifiable(stub, "its body file cannot be read");
+        }
+        final ValidationReport report = bodyPolicy.withoutSkippedBodies(specification.validator().validateResponse(
+                WireMockRequest.pathOf(url),
+                com.atlassian.oai.validator.model.Request.Method.valueOf(request.getMethod().getName()),
+                validatorResponse), false, validatorResponse.isBodySkipped());
+        if (report.hasErrors()) {
+            return new Verification(stub, Outcome.FAILED, specification.generation(), report.getMessages().stream()
+                    .map(message -> message.getKey() + ": " + message.getMessage())
+                    .collect(Collectors.toList()));
+        }
+        return new Verification(stub, Outcome.VERIFIED, specification.generation(), null);
+    }
+
+    /**
+     * @return the single host the stub's {@code Host} header is matched against, or {@code null} if it matches any.
+     */
+    static String hostOf(@Nonnull final RequestPattern request) {
+        if (request.getHeaders() == null) {
+            return null;
+        }
+        for (final Map.Entry<String, MultiValuePattern> header : request.getHeaders().entrySet()) {
+            if ("Host".equalsIgnoreCase(header.getKey()) && header.getValue().getValuePattern() instanceof EqualToPattern) {
+                return header.getValue().getValuePattern().getExpected();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return why the stub's response cannot be known without serving it, or {@code null} if it can: it needs a fixed
+     * method, a literal url or url path and a plain response.
+     */
+    static String whyNotVerifiable(@Nonnull final StubMapping stub) {
+        final RequestPattern request = stub.getRequest();
+        final ResponseDefinition response = stub.getResponse();
+        if (request.getMethod() == null || request.getMethod().equals(RequestMethod.ANY)) {
+            return "it matches any method";
+        }
+        if (request.getUrl() == null && request.getUrlPath() == null) {
+            return "it matches a url pattern";
+        }
+        if (response.isProxyResponse() || response.getFault() != null
+                || (response.getTransformers() != null && !response.getTransformers().isEmpty())) {
+            return "its response is proxied, a fault or transformed";
+        }
+        return null;
+    }
+
+    /**
+     * @return the response the stub serves, its body read from {@code files} if it names a body file.
+     * @throws RuntimeException if the body file cannot be read
+     */
+    @Nonnull
+    static Response stubbedResponse(@Nonnull final ResponseDefinition response, @Nonnull final FileSource files) {
+        final byte[] body = response.specifiesBodyFile() ? files.getBinaryFileNamed(response.getBodyFileName()).readContents()
+                : response.specifiesBodyContent() ? response.getByteBody() : new byte[0];
+        return Response.response()
+                .status(response.getStatus())
+                .headers(response.getHeaders() == null ? new HttpHeaders() : response.getHeaders())
+                .body(body)
+                .build();
+    }
+
+    /**
+     * Notes which stub is serving the request; the response definition is passed on untouched.
+     */
+    @Override
+    public ResponseDefinition transform(final Request request, final ResponseDefinition responseDefinition,
+                                       final FileSource files, final Parameters parameters) {
+        final Long generation = verifiedResponses.get(responseDefinition);
+        if (generation != null) {
+            servedRequests.put(request, generation);
+        }
+        return responseDefinition;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    /**
+     * @return whether the request was served by a stub whose response was verified against the given definition,
+     * so that its response need not be validated again.
+     */
+    boolean servedVerifiedResponse(@Nonnull final Request request, @Nonnull final OpenApiSpecification specification) {
+        final Long generation = servedRequests.asMap().remove(request);
+        if (generation != null && generation == specification.generation()) {
+            responsesNotRevalidated.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of stubs per outcome of the last verification, and of responses not validated again since,
+     * for JSON output.
+     */
+    @Nonnull
+    Map<String, Object> metrics() {
+        final Map<String, Object> metrics = new LinkedHashMap<>();
+        outcomes.forEach((outcome, count) -> metrics.put(outcome.label, count));
+        metrics.put("responsesNotRevalidated", responsesNotRevalidated.sum());
+        return metrics;
+    }
+
+    long responsesNotRevalidated() {
+        return responsesNotRevalidated.sum();
+    }
+
+    /**
+     * Writes a verification report, as returned by {@link #verify}, as JSON.
+     */
+    static void writeReport(@Nonnull final List<Map<String, Object>> report, @Nonnull final File file) throws IOException {
+        new ObjectMapper().writerWithDefaultPrettyPrinter().writeValue(file, report);
+    }
+
+    private static class Verification {
+        private final StubMapping stub;
+        private final Outcome outcome;
+        private final long generation;
+        private final Object details;
+
+        private Verification(final StubMapping stub, final Outcome outcome, final long generation, final Object details) {
+            this.stub = stub;
+            this.outcome = outcome;
+            this.generation = generation;
+            this.details = details;
+        }
+
+        static Verification notVerifiable(final StubMapping stub, final String reason) {
+            return new Verification(stub, Outcome.NOT_VERIFIABLE, -1, "not verifiable, since " + reason);
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("id", String.valueOf(stub.getId()));
+            map.put("name", stub.getName());
+            map.put("method", String.valueOf(stub.getRequest().getMethod()));
+            map.put("url", urlOf(stub.getRequest()));
+            map.put("outcome", outcome.label);
+            map.put("details", details);
+            return map;
+        }
+
+        private static String urlOf(final RequestPattern request) {
+            return request.getUrl() != null ? request.getUrl()
+                    : request.getUrlPath() != null ? request.getUrlPath()
+                    : request.getUrlPattern() != null ? request.getUrlPattern()
+                    : request.getUrlPathPattern();
+        }
+    }
+}
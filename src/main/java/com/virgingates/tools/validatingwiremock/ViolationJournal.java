@@ -0,0 +1,186 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.report.ValidationReport;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The most recent distinct validation violations, kept after the interactions that caused them are long gone.
+ * <p>
+ * Violations are deduplicated by operation, message key and pointer (where in the interaction the message applies:
+ * the parameter, or the path within the body the schema complained about), so a client hammering a broken endpoint
+ * yields a single record whose count and last-seen time go up. Recording a repeat is lock-free and creates no record,
+ * only the lookup key, whose pointer is extracted from the message each time. Distinct violations take the next slot of a fixed-size ring, evicting the oldest record.
+ */
+class ViolationJournal {
+
+    private static final Pattern SCHEMA_PATH = Pattern.compile("^\\[Path '([^']*)'\\]");
+
+    private final AtomicReferenceArray<Violation> ring;
+    private final ConcurrentMap<Key, Violation> byKey = new ConcurrentHashMap<>();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param capacity the number of distinct violations to keep
+     */
+    ViolationJournal(final int capacity) {
+        this.ring = new AtomicReferenceArray<>(capacity);
+    }
+
+    /**
+     * Records the errors of the report, if any.
+     */
+    void record(@Nonnull final String operation, @Nonnull final ValidationReport report) {
+        if (!report.hasErrors()) {
+            return;
+        }
+        final long now = System.currentTimeMillis();
+        for (final ValidationReport.Message message : report.getMessages()) {
+            if (message.getLevel() == ValidationReport.Level.ERROR) {
+                record(new Key(operation, message.getKey(), pointerOf(message)), message, now);
+            }
+        }
+    }
+
+    private void record(final Key key, final ValidationReport.Message message, final long now) {
+        Violation violation = byKey.get(key);
+        if (violation == null) {
+            final Violation created = new Violation(key, message.getMessage(), now);
+            violation = byKey.putIfAbsent(key, created);
+            if (violation == null) {
+                created.sequence = sequence.getAndIncrement();
+                final Violation evicted = ring.getAndSet((int) (created.sequence % ring.length()), created);
+                if (evicted != null) {
+                    byKey.remove(evicted.key, evicted);
+                }
+                return;
+            }
+        }
+        violation.occurrences.increment();
+        violation.lastSeen = now;
+    }
+
+    private static String pointerOf(final ValidationReport.Message message) {
+        final StringBuilder pointer = new StringBuilder();
+        message.getContext().flatMap(ValidationReport.MessageContext::getLocation)
+                .ifPresent(location -> pointer.append(location.name().toLowerCase()));
+        final io.swagger.v3.oas.models.parameters.Parameter parameter =
+                message.getContext().flatMap(ValidationReport.MessageContext::getParameter).orElse(null);
+        if (parameter != null) {
+            pointer.append(' ').append(parameter.getIn()).append(' ').append(parameter.getName());
+        } else {
+            final Matcher path = SCHEMA_PATH.matcher(message.getMessage());
+            if (path.find()) {
+                pointer.append(' ').append(path.group(1).isEmpty() ? "/" : path.group(1));
+            }
+        }
+        return pointer.toString();
+    }
+
+    /**
+     * @return a page of the violations kept, most recently first seen first.
+     */
+    @Nonnull
+    Map<String, Object> page(final int offset, final int limit) {
+        final List<Violation> violations = new ArrayList<>(ring.length());
+        for (int i = 0; i < ring.length(); i++) {
+            final Violation violation = ring.get(i);
+            if (violation != null) {
+                violations.add(violation);
+            }
+        }
+        violations.sort(Comparator.comparingLong((Violation violation) -> violation.sequence).reversed());
+
+        final List<Map<String, Object>> page = new ArrayList<>();
+        for (int i = Math.max(offset, 0); i < violations.size() && page.size() < limit; i++) {
+            page.add(violations.get(i).toMap());
+        }
+        final Map<String, Object> result = new LinkedHashMap<>();
+        result.put("total", violations.size());
+        result.put("distinctSeen", sequence.get());
+        result.put("offset", offset);
+        result.put("limit", limit);
+        result.put("violations", page);
+        return result;
+    }
+
+    void reset() {
+        for (int i = 0; i < ring.length(); i++) {
+            final Violation evicted = ring.getAndSet(i, null);
+            if (evicted != null) {
+                byKey.remove(evicted.key, evicted);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String operation;
+        private final String messageKey;
+        private final String pointer;
+        private final int hash;
+
+        private Key(final String operation, final String messageKey, final String pointer) {
+            this.operation = operation;
+            this.messageKey = messageKey;
+            this.pointer = pointer;
+            this.hash = Objects.hash(operation, messageKey, pointer);
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return hash == other.hash && operation.equals(other.operation) && messageKey.equals(other.messageKey)
+                    && pointer.equals(other.pointer);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Violation {
+        private final Key key;
+        private final String message;
+        private final long firstSeen;
+        private final LongAdder occurrences = new LongAdder();
+        private volatile long lastSeen;
+        private volatile long sequence;
+
+        private Violation(final Key key, final String message, final long firstSeen) {
+            this.key = key;
+            this.message = message;
+            this.firstSeen = firstSeen;
+            this.lastSeen = firstSeen;
+            this.occurrences.increment();
+        }
+
+        Map<String, Object> toMap() {
+            final Map<String, Object> map = new LinkedHashMap<>();
+            map.put("operation", key.operation);
+            map.put("key", key.messageKey);
+            map.put("pointer", key.pointer);
+            map.put("message", message);
+            map.put("occurrences", occurrences.sum());
+            map.put("firstSeen", firstSeen);
+            map.put("lastSeen", lastSeen);
+            return map;
+        }
+    }
+}
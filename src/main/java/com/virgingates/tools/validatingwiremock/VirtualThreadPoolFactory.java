@@ -0,0 +1,150 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.Options;
+import com.github.tomakehurst.wiremock.http.ThreadPoolFactory;
+import com.github.tomakehurst.wiremock.servlet.WireMockHandlerDispatchingServlet;
+import wiremock.org.eclipse.jetty.server.Handler;
+import wiremock.org.eclipse.jetty.server.Server;
+import wiremock.org.eclipse.jetty.servlet.ServletContextHandler;
+import wiremock.org.eclipse.jetty.util.component.AbstractLifeCycle;
+import wiremock.org.eclipse.jetty.util.thread.ThreadPool;
+
+import javax.annotation.Nonnull;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves requests on virtual threads instead of Jetty's bounded pool of platform threads, so a container thread
+ * blocked on a proxied upstream call costs little and concurrency follows the number of requests in flight rather
+ * than {@code --container-threads}.
+ * <p>
+ * Every task gets a new virtual thread: there is nothing to pool. Jetty's acceptors and selectors, which loop for as
+ * long as the server runs, get one too. Requires Java 21 or later, see {@link VirtualThreads}.
+ */
+class VirtualThreadPoolFactory implements ThreadPoolFactory {
+
+    @Override
+    public ThreadPool buildThreadPool(final Options options) {
+        return new VirtualThreadPool(VirtualThreads.factory("qtp-virtual-"));
+    }
+
+    /**
+     * Replaces the executor WireMock delays asynchronous responses with (see {@code --async-response-enabled}) by one
+     * that writes each delayed response on its own virtual thread. A single platform thread keeps the schedule.
+     *
+     * @return whether the server has asynchronous responses enabled, and so an executor to replace.
+     */
+    static boolean installAsyncResponseExecutor(@Nonnull final WireMockServer server) throws ReflectiveOperationException {
+        final Server jettyServer = (Server) WireMockInternals.read(WireMockInternals.read(server, "httpServer"), "jettyServer");
+        boolean installed = false;
+        for (final Handler handler : jettyServer.getChildHandlersByClass(ServletContextHandler.class)) {
+            final ServletContextHandler context = (ServletContextHandler) handler;
+            final Object executor = context.getAttribute(WireMockHandlerDispatchingServlet.ASYNCHRONOUS_RESPONSE_EXECUTOR);
+            if (executor instanceof ScheduledExecutorService) {
+                context.setAttribute(WireMockHandlerDispatchingServlet.ASYNCHRONOUS_RESPONSE_EXECUTOR,
+                        new VirtualThreadScheduler(VirtualThreads.factory("async-response-")));
+                ((ScheduledExecutorService) executor).shutdown();
+                installed = true;
+            }
+        }
+        return installed;
+    }
+
+    private static final class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool {
+        private final ThreadFactory threadFactory;
+        private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        private volatile boolean stopped;
+
+        private VirtualThreadPool(final ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+        }
+
+        @Override
+        public void execute(final Runnable task) {
+            if (stopped) {
+                throw new RejectedExecutionException("The server is stopped");
+            }
+            final Thread thread = threadFactory.newThread(() -> {
+                try {
+                    task.run();
+                } finally {
+                    threads.remove(Thread.currentThread());
+                    if (stopped) {
+                        synchronized (this) {
+                            notifyAll();
+                        }
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        @Override
+        protected void doStart() {
+            stopped = false;
+        }
+
+        /**
+         * Interrupts whatever is still running once the rest of the server has stopped, like Jetty's own pool does.
+         */
+        @Override
+        protected void doStop() {
+            stopped = true;
+            threads.forEach(Thread::interrupt);
+        }
+
+        @Override
+        public void join() throws InterruptedException {
+            synchronized (this) {
+                while (!stopped || !threads.isEmpty()) {
+                    wait(100);
+                }
+            }
+        }
+
+        @Override
+        public int getThreads() {
+            return threads.size();
+        }
+
+        @Override
+        public int getIdleThreads() {
+            return 0;
+        }
+
+        @Override
+        public boolean isLowOnThreads() {
+            return false;
+        }
+    }
+
+    /**
+     * Keeps the schedule on one platform thread and runs what is due on a new virtual thread. WireMock only ever
+     * schedules runnables with a delay.
+     */
+    private static final class VirtualThreadScheduler extends ScheduledThreadPoolExecutor {
+        private final ThreadFactory threadFactory;
+
+        private VirtualThreadScheduler(final ThreadFactory threadFactory) {
+            super(1, runnable -> {
+                final Thread thread = new Thread(runnable, "async-response-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.threadFactory = threadFactory;
+        }
+
+        @Override
+        public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+            return super.schedule(() -> threadFactory.newThread(command).start(), delay, unit);
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.virgingates.tools.validatingwiremock;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Method;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads, when the JVM running the tool has them (Java 21 or later).
+ * <p>
+ * The tool is built for Java 11, so {@code Thread.ofVirtual()} is looked up reflectively; callers fall back to
+ * platform threads when {@link #isSupported()} is false.
+ */
+final class VirtualThreads {
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            final Class<?> builder = Class.forName("java.lang.Thread$Builder");
+            name = builder.getMethod("name", String.class, long.class);
+            factory = builder.getMethod("factory");
+            // a preview feature before Java 21, in which case this throws unless previews are enabled
+            factory.invoke(ofVirtual.invoke(null));
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+    private VirtualThreads() {
+    }
+
+    static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * @param prefix the name of the threads, which are numbered from 1
+     * @return a factory of virtual threads.
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    @Nonnull
+    static ThreadFactory factory(@Nonnull final String prefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later, this is Java "
+                    + System.getProperty("java.version"));
+        }
+        try {
+            return (ThreadFactory) FACTORY.invoke(NAME.invoke(OF_VIRTUAL.invoke(null), prefix, 1L));
+        } catch (final ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Unable to create virtual threads", e);
+        }
+    }
+}
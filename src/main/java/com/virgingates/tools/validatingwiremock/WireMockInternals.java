@@ -0,0 +1,48 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+
+import javax.annotation.Nonnull;
+import java.lang.reflect.Field;
+
+/**
+ * Reflective access to private fields of WireMock, for the components it has no extension point for.
+ * <p>
+ * Callers are expected to leave WireMock as it was when a field is not found, since other WireMock versions may lay
+ * out their internals differently.
+ */
+final class WireMockInternals {
+
+    private WireMockInternals() {
+    }
+
+    /**
+     * @return the {@code WireMockApp} behind the server, which owns its stubs and request journal.
+     */
+    @Nonnull
+    static Object wireMockApp(@Nonnull final WireMockServer server) throws ReflectiveOperationException {
+        return read(server, "wireMockApp");
+    }
+
+    static Object read(@Nonnull final Object target, @Nonnull final String fieldName) throws ReflectiveOperationException {
+        return field(target, fieldName).get(target);
+    }
+
+    static void write(@Nonnull final Object target, @Nonnull final String fieldName, final Object value)
+            throws ReflectiveOperationException {
+        field(target, fieldName).set(target, value);
+    }
+
+    private static Field field(final Object target, final String fieldName) throws NoSuchFieldException {
+        for (Class<?> type = target.getClass(); type != null; type = type.getSuperclass()) {
+            try {
+                final Field field = type.getDeclaredField(fieldName);
+                field.setAccessible(true);
+                return field;
+            } catch (final NoSuchFieldException e) {
+                // declared further up
+            }
+        }
+        throw new NoSuchFieldException(target.getClass().getName() + "." + fieldName);
+    }
+}
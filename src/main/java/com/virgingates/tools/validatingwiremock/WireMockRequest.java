@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2011 Thomas Akehurst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.common.Urls;
+import com.github.tomakehurst.wiremock.http.*;
+
+import javax.annotation.Nonnull;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A view of a {@link com.github.tomakehurst.wiremock.http.Request} for the OpenAPI validator.
+ * <p>
+ * Nothing is copied up front: the path is decoded, the query string parsed, the headers collected and the body
+ * decoded the first time the validator asks for them, so whatever it does not look at costs nothing. Header values are
+ * split on commas, like {@link com.atlassian.oai.validator.model.SimpleRequest} does. A view is not thread-safe and is
+ * meant to be used by a single validation.
+ */
+class WireMockRequest implements com.atlassian.oai.validator.model.Request {
+
+    private final com.github.tomakehurst.wiremock.http.Request originalRequest;
+    private final BodyPolicy bodyPolicy;
+
+    private String path;
+    private Map<String, Collection<String>> queryParameters;
+    private Map<String, Collection<String>> headers;
+    private byte[] bodyBytes;
+    private boolean bodyRead;
+    private Optional<String> body;
+    private long conversionNanos;
+
+    /**
+     * @deprecated Use: {@link WireMockRequest#of(com.github.tomakehurst.wiremock.http.Request)}
+     */
+    @Deprecated
+    public WireMockRequest(@Nonnull final com.github.tomakehurst.wiremock.http.Request originalRequest) {
+        this(originalRequest, BodyPolicy.VALIDATE_ALL);
+    }
+
+    private WireMockRequest(@Nonnull final com.github.tomakehurst.wiremock.http.Request originalRequest,
+                            @Nonnull final BodyPolicy bodyPolicy) {
+        this.originalRequest = requireNonNull(originalRequest, "An original request is required");
+        this.bodyPolicy = bodyPolicy;
+    }
+
+    @Nonnull
+    @Override
+    public String getPath() {
+        if (path == null) {
+            final String rawPath = pathOf(originalRequest.getUrl());
+            path = rawPath.indexOf('%') < 0 ? rawPath : URI.create(rawPath).getPath();
+        }
+        return path;
+    }
+
+    @Nonnull
+    @Override
+    public com.atlassian.oai.validator.model.Request.Method getMethod() {
+        return com.atlassian.oai.validator.model.Request.Method.valueOf(originalRequest.getMethod().getName());
+    }
+
+    @Nonnull
+    @Override
+    public Optional<String> getBody() {
+        if (body == null) {
+            final byte[] bytes = bodyBytes();
+            final long start = System.nanoTime();
+            body = decode(bytes, originalRequest.contentTypeHeader());
+            conversionNanos += System.nanoTime() - start;
+        }
+        return body;
+    }
+
+    @Nonnull
+    com.github.tomakehurst.wiremock.http.Request originalRequest() {
+        return originalRequest;
+    }
+
+    /**
+     * @return the body as read under the {@link BodyPolicy}.
+     */
+    byte[] bodyBytes() {
+        if (!bodyRead) {
+            final long start = System.nanoTime();
+            bodyBytes = bodyPolicy.requestBody(originalRequest);
+            bodyRead = true;
+            conversionNanos += System.nanoTime() - start;
+        }
+        return bodyBytes;
+    }
+
+    boolean isBodySkipped() {
+        return BodyPolicy.isSkipped(bodyBytes());
+    }
+
+    /**
+     * @return the time spent so far decoding the query string, headers and body for the validator.
+     */
+    long conversionNanos() {
+        return conversionNanos;
+    }
+
+    @Nonnull
+    @Override
+    public Collection<String> getQueryParameters() {
+        return Collections.unmodifiableCollection(queryParameters().keySet());
+    }
+
+    @Nonnull
+    @Override
+    public Collection<String> getQueryParameterValues(final String name) {
+        final Collection<String> values = name == null ? null : queryParameters().get(name);
+        return values == null ? Collections.emptyList() : values;
+    }
+
+    @Nonnull
+    @Override
+    public Map<String, Collection<String>> getHeaders() {
+        if (headers == null) {
+            final long start = System.nanoTime();
+            final Map<String, Collection<String>> allHeaders = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            originalRequest.getHeaders().all().forEach(header -> allHeaders
+                    .computeIfAbsent(header.key(), key -> new ArrayList<>())
+                    .addAll(splitValues(header)));
+            headers = Collections.unmodifiableMap(allHeaders);
+            conversionNanos += System.nanoTime() - start;
+        }
+        return headers;
+    }
+
+    @Nonnull
+    @Override
+    public Collection<String> getHeaderValues(final String name) {
+        if (name == null) {
+            return Collections.emptyList();
+        }
+        if (headers != null) {
+            return headers.getOrDefault(name, Collections.emptyList());
+        }
+        return splitValues(originalRequest.header(name));
+    }
+
+    private Map<String, Collection<String>> queryParameters() {
+        if (queryParameters == null) {
+            final long start = System.nanoTime();
+            final String url = originalRequest.getUrl();
+            final int queryStart = url.indexOf('?');
+            if (queryStart < 0) {
+                queryParameters = Collections.emptyMap();
+            } else {
+                final Map<String, Collection<String>> parameters = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+                Urls.splitQuery(url.substring(queryStart + 1)).forEach((key, value) -> parameters
+                        .computeIfAbsent(key, k -> new ArrayList<>())
+                        .addAll(value.values()));
+                queryParameters = parameters;
+            }
+            conversionNanos += System.nanoTime() - start;
+        }
+        return queryParameters;
+    }
+
+    /**
+     * Splits header values on commas, keeping RFC 1123 dates (which contain one) in one piece.
+     */
+    @Nonnull
+    static List<String> splitValues(final MultiValue header) {
+        if (header == null || !header.isPresent()) {
+            return Collections.emptyList();
+        }
+        final List<String> values = header.values();
+        if (values.size() == 1 && values.get(0).indexOf(',') < 0) {
+            return values;
+        }
+        final List<String> split = new ArrayList<>();
+        for (final String value : values) {
+            final String[] parts = value.split("\\s*,\\s*");
+            for (int i = 0; i < parts.length; i++) {
+                if (i < parts.length - 1 && isRfc1123Date(parts[i] + ", " + parts[i + 1])) {
+                    split.add(parts[i] + ", " + parts[i + 1]);
+                    i++;
+                } else {
+                    split.add(parts[i]);
+                }
+            }
+        }
+        return split;
+    }
+
+    private static boolean isRfc1123Date(final String value) {
+        try {
+            DateTimeFormatter.RFC_1123_DATE_TIME.parse(value);
+            return true;
+        } catch (final DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    @Nonnull
+    static Optional<String> decode(final byte[] body, final ContentTypeHeader contentType) {
+        if (body == null || BodyPolicy.isSkipped(body)) {
+            return Optional.empty();
+        }
+        return Optional.of(new String(body, contentType == null ? StandardCharsets.UTF_8 : contentType.charset()));
+    }
+
+    /**
+     * @param url a request url, with or without query string
+     * @return the (still encoded) path of the url.
+     */
+    @Nonnull
+    static String pathOf(@Nonnull final String url) {
+        final int queryStart = url.indexOf('?');
+        return queryStart < 0 ? url : url.substring(0, queryStart);
+    }
+
+    /**
+     * Wraps the original {@link com.github.tomakehurst.wiremock.http.Request} in a {@link Request} for the OpenAPI
+     * validator, without copying it.
+     *
+     * @param originalRequest the original {@link com.github.tomakehurst.wiremock.http.Request}
+     */
+    @Nonnull
+    public static com.atlassian.oai.validator.model.Request of(@Nonnull final com.github.tomakehurst.wiremock.http.Request originalRequest) {
+        return of(originalRequest, BodyPolicy.VALIDATE_ALL);
+    }
+
+    /**
+     * Wraps the original request, only reading its body as far as the given {@link BodyPolicy} allows.
+     */
+    @Nonnull
+    static WireMockRequest of(@Nonnull final com.github.tomakehurst.wiremock.http.Request originalRequest,
+                              @Nonnull final BodyPolicy bodyPolicy) {
+        return new WireMockRequest(originalRequest, bodyPolicy);
+    }
+}
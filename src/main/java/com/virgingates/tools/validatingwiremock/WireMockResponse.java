@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2011 Thomas Akehurst
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.virgingates.tools.validatingwiremock;
+
+import javax.annotation.Nonnull;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A view of a {@link com.github.tomakehurst.wiremock.http.Response} for the OpenAPI validator, decoding the body only
+ * if the validator asks for it. See {@link WireMockRequest}.
+ */
+class WireMockResponse implements com.atlassian.oai.validator.model.Response {
+
+    private final com.github.tomakehurst.wiremock.http.Response originalResponse;
+    private final BodyPolicy bodyPolicy;
+
+    private byte[] bodyBytes;
+    private boolean bodyRead;
+    private Optional<String> body;
+    private long conversionNanos;
+
+    /**
+     * @deprecated Use: {@link WireMockResponse#of(com.github.tomakehurst.wiremock.http.Response)}
+     */
+    @Deprecated
+    public WireMockResponse(@Nonnull final com.github.tomakehurst.wiremock.http.Response originalResponse) {
+        this(originalResponse, BodyPolicy.VALIDATE_ALL);
+    }
+
+    private WireMockResponse(@Nonnull final com.github.tomakehurst.wiremock.http.Response originalResponse,
+                             @Nonnull final BodyPolicy bodyPolicy) {
+        this.originalResponse = requireNonNull(originalResponse, "An original response is required");
+        this.bodyPolicy = bodyPolicy;
+    }
+
+    @Override
+    public int getStatus() {
+        return originalResponse.getStatus();
+    }
+
+    @Nonnull
+    @Override
+    public Optional<String> getBody() {
+        if (body == null) {
+            final byte[] bytes = bodyBytes();
+            final long start = System.nanoTime();
+            body = WireMockRequest.decode(bytes, originalResponse.getHeaders().getContentTypeHeader());
+            conversionNanos += System.nanoTime() - start;
+        }
+        return body;
+    }
+
+    @Nonnull
+    com.github.tomakehurst.wiremock.http.Response originalResponse() {
+        return originalResponse;
+    }
+
+    /**
+     * @return the body as read under the {@link BodyPolicy}.
+     */
+    byte[] bodyBytes() {
+        if (!bodyRead) {
+            final long start = System.nanoTime();
+            bodyBytes = bodyPolicy.responseBody(originalResponse);
+            bodyRead = true;
+            conversionNanos += System.nanoTime() - start;
+        }
+        return bodyBytes;
+    }
+
+    boolean isBodySkipped() {
+        return BodyPolicy.isSkipped(bodyBytes());
+    }
+
+    /**
+     * @return the time spent so far reading and decoding the body for the validator.
+     */
+    long conversionNanos() {
+        return conversionNanos;
+    }
+
+    @Nonnull
+    @Override
+    public Collection<String> getHeaderValues(final String name) {
+        if (name == null || originalResponse.getHeaders() == null) {
+            return Collections.emptyList();
+        }
+        return WireMockRequest.splitValues(originalResponse.getHeaders().getHeader(name));
+    }
+
+    /**
+     * Wraps the original {@link com.github.tomakehurst.wiremock.http.Response} in a {@link Response} for the OpenAPI
+     * validator, without copying it.
+     *
+     * @param originalResponse the original {@link com.github.tomakehurst.wiremock.http.Response}
+     */
+    @Nonnull
+    public static com.atlassian.oai.validator.model.Response of(@Nonnull final com.github.tomakehurst.wiremock.http.Response originalResponse) {
+        return of(originalResponse, BodyPolicy.VALIDATE_ALL);
+    }
+
+    /**
+     * Wraps the original response, only reading its body as far as the given {@link BodyPolicy} allows.
+     */
+    @Nonnull
+    static WireMockResponse of(@Nonnull final com.github.tomakehurst.wiremock.http.Response originalResponse,
+                               @Nonnull final BodyPolicy bodyPolicy) {
+        return new WireMockResponse(originalResponse, bodyPolicy);
+    }
+}
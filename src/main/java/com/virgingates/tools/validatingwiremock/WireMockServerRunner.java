@@ -15,33 +15,23 @@
  */
 package com.virgingates.tools.validatingwiremock;
 
-import com.atlassian.oai.validator.OpenApiInteractionValidator;
-import com.atlassian.oai.validator.model.SimpleRequest;
-import com.atlassian.oai.validator.model.SimpleResponse;
-import com.atlassian.oai.validator.report.JsonValidationReportFormat;
-import com.atlassian.oai.validator.report.ValidationReport;
 import com.github.tomakehurst.wiremock.WireMockServer;
 import com.github.tomakehurst.wiremock.common.FatalStartupException;
 import com.github.tomakehurst.wiremock.common.FileSource;
-import com.github.tomakehurst.wiremock.common.Urls;
+import com.github.tomakehurst.wiremock.extension.ResponseDefinitionTransformer;
+import com.github.tomakehurst.wiremock.extension.ResponseTransformer;
 import com.github.tomakehurst.wiremock.http.*;
 import com.github.tomakehurst.wiremock.matching.RequestPattern;
 import com.github.tomakehurst.wiremock.standalone.MappingsLoader;
 import com.github.tomakehurst.wiremock.stubbing.StubMapping;
 import com.github.tomakehurst.wiremock.stubbing.StubMappings;
 
-import javax.annotation.Nonnull;
-
-import java.io.FileOutputStream;
-import java.io.PrintStream;
-import java.util.Collection;
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.Map;
 
-import java.net.URI;
-import java.util.Optional;
-import java.util.logging.Logger;
-
-import static java.util.Objects.requireNonNull;
+import java.nio.file.Paths;
 
 import static com.github.tomakehurst.wiremock.client.ResponseDefinitionBuilder.responseDefinition;
 import static com.github.tomakehurst.wiremock.client.WireMock.anyUrl;
@@ -67,13 +57,25 @@ public class WireMockServerRunner {
     }
 
     private WireMockServer wireMockServer;
+    private OpenApiValidationListener validationListener;
+    private ParallelMappingsSource mappingsSource;
+    private ProxyClient proxyClient;
 
     public void run(String... args) {
+        StartupTimings startupTimings = new StartupTimings();
         CommandLineOptions options = new com.virgingates.tools.validatingwiremock.CommandLineOptions(args);
         if (options.help()) {
             out.println(options.helpText());
             return;
         }
+        startupTimings.phase("options");
+
+        if (options.openAPIBatchInput() != null) {
+            if (!validateBatch(options)) {
+                System.exit(1);
+            }
+            return;
+        }
 
         FileSource fileSource = options.filesRoot();
         fileSource.createIfNecessary();
@@ -82,9 +84,88 @@ public class WireMockServerRunner {
         FileSource mappingsFileSource = fileSource.child(MAPPINGS_ROOT);
         mappingsFileSource.createIfNecessary();
 
+        if (!options.openAPISpecBindings().isEmpty()) {
+            validationListener = new OpenApiValidationListener(options);
+            options.addExtensions(new OpenApiAdminApi(validationListener));
+            if (validationListener.getVerifiedStubs() != null) {
+                options.addExtensions(validationListener.getVerifiedStubs());
+            }
+            for (ReloadableSpecification specification : validationListener.getRouter().specifications()) {
+                OpenApiSpecification loaded = specification.get();
+                startupTimings.detail(specification.binding().toString(), loaded.loadNanos(),
+                        "spec cache " + loaded.cacheOutcome().name().toLowerCase().replace('_', ' '));
+            }
+            startupTimings.phase("OpenApi files");
+        }
+
+        if (options.proxyClientConfigured()) {
+            proxyClient = new ProxyClient(options);
+            options.addExtensions(new ProxyAdminApi(proxyClient));
+        }
+
+        ResponseTemplateCache templateCache = null;
+        if (options.responseTemplating()) {
+            templateCache = new ResponseTemplateCache(options.templateCacheSize());
+            options.addExtensions(new TemplateAdminApi(templateCache));
+        }
+
+        mappingsSource = options.parallelMappingsSource();
         wireMockServer = new WireMockServer(options);
+        startupTimings.detail("mappings", mappingsSource.loadNanos(), mappingsSource.loadSummary());
+        IndexedStubMappings stubMappings = null;
+        try {
+            stubMappings = IndexedStubMappings.install(wireMockServer);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            options.notifier().error("Unable to index stub mappings, every request will be matched against every stub", e);
+        }
+
+        if (templateCache != null && stubMappings != null) {
+            try {
+                stubMappings.cacheTemplates(templateCache);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                options.notifier().error("Unable to cache compiled response templates, rendering them with WireMock's transformer", e);
+            }
+        }
 
-        if (options.openAPIFile().length()!=0) wireMockServer.addMockServiceRequestListener(new OpenApiValidationListener(options.openAPIFile()));
+        if (options.requestJournalMaxBytes() > 0) {
+            try {
+                MappedRequestJournal.install(wireMockServer, Paths.get(options.requestJournalFile()), options.requestJournalMaxBytes());
+            } catch (ReflectiveOperationException | IOException | RuntimeException e) {
+                options.notifier().error("Unable to move the request journal off the heap, keeping it on the heap", e);
+            }
+        }
+
+        if (proxyClient != null) {
+            try {
+                proxyClient.install(wireMockServer);
+            } catch (ReflectiveOperationException | IOException | RuntimeException e) {
+                options.notifier().error("Unable to configure the proxy client, proxying with WireMock's defaults", e);
+            }
+        }
+
+        if (options.virtualThreads()) {
+            try {
+                VirtualThreadPoolFactory.installAsyncResponseExecutor(wireMockServer);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                options.notifier().error("Unable to delay asynchronous responses on virtual threads, using platform threads", e);
+            }
+        }
+
+        if (options.watchMappings()) {
+            if (stubMappings == null) {
+                options.notifier().error("Unable to watch " + MAPPINGS_ROOT + " for changes without access to the loaded stubs");
+            } else {
+                try {
+                    mappingsSource.watch(stubMappings);
+                } catch (IOException e) {
+                    options.notifier().error("Unable to watch " + MAPPINGS_ROOT + " for changes", e);
+                }
+            }
+        }
+
+        if (validationListener != null) {
+            wireMockServer.addMockServiceRequestListener(validationListener);
+        }
 
         if (options.recordMappingsEnabled()) {
             wireMockServer.enableRecordMappings(mappingsFileSource, filesFileSource);
@@ -94,8 +175,16 @@ public class WireMockServerRunner {
             addProxyMapping(options.proxyUrl());
         }
 
+        startupTimings.phase("WireMock setup");
+
+        if (validationListener != null && validationListener.getVerifiedStubs() != null) {
+            verifyStubs(options, validationListener.getVerifiedStubs(), filesFileSource);
+            startupTimings.phase("stub verification");
+        }
+
         try {
             wireMockServer.start();
+            startupTimings.phase("server start");
             options.setResultingPort(wireMockServer.port());
             if (!options.bannerDisabled()){
                 out.println(BANNER);
@@ -105,12 +194,69 @@ public class WireMockServerRunner {
                 out.println("The WireMock server is started .....");
             }
             out.println(options);
+            out.println(startupTimings);
         } catch (FatalStartupException e) {
             System.err.println(e.getMessage());
             System.exit(1);
         }
     }
 
+    private void verifyStubs(CommandLineOptions options, VerifiedStubs verifiedStubs, FileSource filesFileSource) {
+        boolean transformedGlobally = false;
+        for (ResponseDefinitionTransformer transformer : options.extensionsOfType(ResponseDefinitionTransformer.class).values()) {
+            transformedGlobally |= transformer != verifiedStubs && transformer.applyGlobally();
+        }
+        for (ResponseTransformer transformer : options.extensionsOfType(ResponseTransformer.class).values()) {
+            transformedGlobally |= transformer.applyGlobally();
+        }
+
+        List<Map<String, Object>> report = verifiedStubs.verify(
+                wireMockServer.listAllStubMappings().getMappings(), filesFileSource, transformedGlobally);
+        out.println("OpenApi stub verification: " + verifiedStubs.metrics());
+        for (Map<String, Object> verification : report) {
+            if ("failed".equals(verification.get("outcome"))) {
+                options.notifier().error("Stub " + verification.get("id") + " (" + verification.get("method") + " "
+                        + verification.get("url") + ") does not conform to its OpenApi file: " + verification.get("details"));
+            }
+        }
+        try {
+            VerifiedStubs.writeReport(report, new File(options.openAPIVerifyStubsReport()));
+        } catch (IOException e) {
+            options.notifier().error("Unable to write the stub verification report to " + options.openAPIVerifyStubsReport(), e);
+        }
+    }
+
+    /**
+     * Validates the recorded traffic given with --openapi-batch-validate and writes the report.
+     *
+     * @return whether every interaction passed.
+     */
+    private boolean validateBatch(CommandLineOptions options) {
+        SpecRouter router = new SpecRouter(options.openAPISpecBindings(), options.openAPISpecCacheDir() == null
+                ? SpecCache.DISABLED : new SpecCache(Paths.get(options.openAPISpecCacheDir())));
+        BatchValidator validator = new BatchValidator(router,
+                new BodyPolicy(options.openAPIMaxBodySize(), options.openAPISkippedBodyContentTypes()),
+                options.openAPIViolationJournalSize() > 0 ? new ViolationJournal(options.openAPIViolationJournalSize()) : null,
+                options.openAPIBatchThreads());
+        try {
+            Map<String, Object> report = validator.validate(Paths.get(options.openAPIBatchInput()));
+            BatchValidator.writeReport(report, new File(options.openAPIBatchReport()));
+            out.println("OpenApi batch validation of " + options.openAPIBatchInput() + ": " + report.get("validated")
+                    + " validated, " + report.get("failed") + " failed, " + report.get("notRouted") + " not routed, "
+                    + report.get("notValidatable") + " not validatable, " + report.get("unreadable") + " unreadable, "
+                    + report.get("validatorErrors") + " validator errors in "
+                    + report.get("elapsedMillis") + " ms. Report written to " + options.openAPIBatchReport());
+            if (validator.truncated()) {
+                System.err.println("The input ended early, the interactions after that point were not validated: "
+                        + report.get("truncation"));
+            }
+        } catch (IOException e) {
+            System.err.println("Unable to validate " + options.openAPIBatchInput() + ": " + e.getMessage());
+            return false;
+        }
+        return validator.failed() == 0 && validator.validatorErrors() == 0 && !validator.truncated();
+    }
+
     private void addProxyMapping(final String baseUrl) {
         wireMockServer.loadMappingsUsing(new MappingsLoader() {
             @Override
@@ -131,6 +277,15 @@ public class WireMockServerRunner {
         if (wireMockServer != null) {
             wireMockServer.stop();
         }
+        if (validationListener != null) {
+            validationListener.stop();
+        }
+        if (mappingsSource != null) {
+            mappingsSource.stop();
+        }
+        if (proxyClient != null) {
+            proxyClient.stop();
+        }
     }
 
     public boolean isRunning() {
@@ -147,205 +302,3 @@ public class WireMockServerRunner {
         new WireMockServerRunner().run(args);
     }
 }
-
-class OpenApiValidationListener implements RequestListener {
-    private final OpenApiInteractionValidator validator;
-    private ValidationReport report = ValidationReport.empty();
-
-    public OpenApiValidationListener(final String specUrlOrDefinition) {
-        validator = OpenApiInteractionValidator.createFor(specUrlOrDefinition).build();
-    }
-
-
-    @Override
-    public void requestReceived(final Request request, final Response response) {
-        try {
-            // we exclude OPTIONS otherwise we need to provide CORS headers all over Swagger file..
-            if (!request.getMethod().equals(RequestMethod.OPTIONS)) {
-                report = report.merge(validator.validate(WireMockRequest.of(request), WireMockResponse.of(response)));
-                assertValidationPassed();
-            }
-        } catch (final Exception e) {
-            //log.error("Exception occurred while validating request", e);
-            throw e;
-        }
-        finally {
-            reset();
-        }
-    }
-
-    /**
-     * Access the current validation report. This will contain all messages since the last call to {@link #reset()}.
-     * <p>
-     * Most often clients will simply want to invoke {@link #assertValidationPassed()} rather than access
-     * the report directly.
-     *
-     * @return the current validation report.
-     */
-    public ValidationReport getReport() {
-        return report;
-    }
-
-    /**
-     * Reset this listener instance and remove validation messages from the validation report.
-     * <p>
-     * This method should be invoked between tests to ensure validation messages don't carry over between test runs
-     * e.g.
-     * <pre>
-     *     &#64;After
-     *     public void tearDown() {
-     *          validationListener.reset();
-     *     }
-     * </pre>
-     */
-    public void reset() {
-        report = ValidationReport.empty();
-    }
-
-    /**
-     * Assert that the current validation report contains no errors and fail if it does.
-     *
-     * @throws OpenApiValidationException if the current validation report contains any errors.
-     */
-    public void assertValidationPassed() {
-        if (report.hasErrors()) {
-            throw new OpenApiValidationException(report);
-        }
-    }
-
-    public static class OpenApiValidationException extends RuntimeException {
-
-        private final ValidationReport report;
-
-        public OpenApiValidationException(final ValidationReport report) {
-            super(JsonValidationReportFormat.getInstance().apply(report));
-            this.report = report;
-        }
-
-        public ValidationReport getValidationReport() {
-            return report;
-        }
-    }
-
-}
-
-class WireMockRequest implements com.atlassian.oai.validator.model.Request {
-
-    private final com.atlassian.oai.validator.model.Request delegate;
-
-    /**
-     * @deprecated Use: {@link WireMockRequest#of(com.github.tomakehurst.wiremock.http.Request)}
-     */
-    @Deprecated
-    public WireMockRequest(@Nonnull final com.github.tomakehurst.wiremock.http.Request originalRequest) {
-        delegate = WireMockRequest.of(originalRequest);
-    }
-
-    @Nonnull
-    @Override
-    public String getPath() {
-        return delegate.getPath();
-    }
-
-    @Nonnull
-    @Override
-    public com.atlassian.oai.validator.model.Request.Method getMethod() {
-        return delegate.getMethod();
-    }
-
-    @Nonnull
-    @Override
-    public Optional<String> getBody() {
-        return delegate.getBody();
-    }
-
-    @Nonnull
-    @Override
-    public Collection<String> getQueryParameters() {
-        return delegate.getQueryParameters();
-    }
-
-    @Nonnull
-    @Override
-    public Collection<String> getQueryParameterValues(final String name) {
-        return delegate.getQueryParameterValues(name);
-    }
-
-    @Nonnull
-    @Override
-    public Map<String, Collection<String>> getHeaders() {
-        return delegate.getHeaders();
-    }
-
-    @Nonnull
-    @Override
-    public Collection<String> getHeaderValues(final String name) {
-        return delegate.getHeaderValues(name);
-    }
-
-    /**
-     * Builds a {@link Request} for the OpenAPI validator out of the
-     * original {@link com.github.tomakehurst.wiremock.http.Request}.
-     *
-     * @param originalRequest the original {@link com.github.tomakehurst.wiremock.http.Request}
-     */
-    @Nonnull
-    public static com.atlassian.oai.validator.model.Request of(@Nonnull final com.github.tomakehurst.wiremock.http.Request originalRequest) {
-        requireNonNull(originalRequest, "An original request is required");
-
-        final URI uri = URI.create(originalRequest.getUrl());
-        final Map<String, QueryParameter> queryParameterMap = Urls.splitQuery(uri);
-
-        final SimpleRequest.Builder builder =
-                new SimpleRequest.Builder(originalRequest.getMethod().getName(), uri.getPath())
-                        .withBody(originalRequest.getBodyAsString());
-        originalRequest.getHeaders().all().forEach(header -> builder.withHeader(header.key(), header.values()));
-        queryParameterMap.forEach((key, value) -> builder.withQueryParam(key, value.values()));
-        return builder.build();
-    }
-}
-
-class WireMockResponse implements com.atlassian.oai.validator.model.Response {
-
-    private final com.atlassian.oai.validator.model.Response delegate;
-
-    /**
-     * @deprecated Use: {@link WireMockResponse#of(com.github.tomakehurst.wiremock.http.Response)}
-     */
-    @Deprecated
-    public WireMockResponse(@Nonnull final com.github.tomakehurst.wiremock.http.Response originalResponse) {
-        delegate = WireMockResponse.of(originalResponse);
-    }
-
-    @Override
-    public int getStatus() {
-        return delegate.getStatus();
-    }
-
-    @Nonnull
-    @Override
-    public Optional<String> getBody() {
-        return delegate.getBody();
-    }
-
-    @Nonnull
-    @Override
-    public Collection<String> getHeaderValues(final String name) {
-        return delegate.getHeaderValues(name);
-    }
-
-    /**
-     * Builds a {@link Response} for the OpenAPI validator out of the
-     * original {@link com.github.tomakehurst.wiremock.http.Response}.
-     *
-     * @param originalResponse the original {@link com.github.tomakehurst.wiremock.http.Response}
-     */
-    @Nonnull
-    public static com.atlassian.oai.validator.model.Response of(@Nonnull final com.github.tomakehurst.wiremock.http.Response originalResponse) {
-        requireNonNull(originalResponse, "An original response is required");
-        final SimpleResponse.Builder builder = new SimpleResponse.Builder(originalResponse.getStatus())
-                .withBody(originalResponse.getBodyAsString());
-        originalResponse.getHeaders().all().forEach(header -> builder.withHeader(header.key(), header.values()));
-        return builder.build();
-    }
-}
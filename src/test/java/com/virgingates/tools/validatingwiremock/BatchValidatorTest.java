@@ -0,0 +1,100 @@
+package com.virgingates.tools.validatingwiremock;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchValidatorTest {
+
+    private static final String SPEC = "openapi: 3.0.0\n"
+            + "info: {title: Pets, version: '1'}\n"
+            + "paths:\n"
+            + "  /pets/{petId}:\n"
+            + "    get:\n"
+            + "      parameters:\n"
+            + "        - {name: petId, in: path, required: true, schema: {type: integer}}\n"
+            + "      responses:\n"
+            + "        '200':\n"
+            + "          description: ok\n"
+            + "          content:\n"
+            + "            application/json:\n"
+            + "              schema: {type: object, required: [id], properties: {id: {type: integer}}}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private BatchValidator validator;
+
+    @Before
+    public void setUp() throws IOException {
+        final File spec = folder.newFile("spec.yaml");
+        Files.write(spec.toPath(), SPEC.getBytes(StandardCharsets.UTF_8));
+        final SpecRouter router = new SpecRouter(Collections.singletonList(SpecBinding.parse(spec.getPath())), SpecCache.DISABLED);
+        validator = new BatchValidator(router, BodyPolicy.VALIDATE_ALL, null, 2);
+    }
+
+    @Test
+    public void skipsEntriesThatAreNotServeEvents() throws IOException {
+        final Map<String, Object> report = validate("{\"requests\": ["
+                + event("5f0c6a8e-3b1d-4c9e-9d1a-6f2b7c8d9e01", "/pets/1") + ", "
+                + event("not-a-uuid", "/pets/2") + ", "
+                + "{\"id\": \"5f0c6a8e-3b1d-4c9e-9d1a-6f2b7c8d9e02\", \"request\": \"not a request\"}, "
+                + event("5f0c6a8e-3b1d-4c9e-9d1a-6f2b7c8d9e03", "/pets/3")
+                + "]}");
+
+        assertEquals(2L, report.get("validated"));
+        assertEquals(2L, report.get("unreadable"));
+        assertEquals(false, report.get("truncated"));
+        assertFalse(validator.truncated());
+    }
+
+    @Test
+    public void validatesTheEntriesBeforeTheInputEnds() throws IOException {
+        final Map<String, Object> report = validate("{\"requests\": ["
+                + event("5f0c6a8e-3b1d-4c9e-9d1a-6f2b7c8d9e01", "/pets/1") + ", "
+                + event("5f0c6a8e-3b1d-4c9e-9d1a-6f2b7c8d9e02", "/pets/2") + ", "
+                + "{\"id\": \"5f0c6a8e-3b1d-4c9e-9d1a-6f2b7c8d9e03\", \"requ");
+
+        assertEquals(2L, report.get("validated"));
+        assertEquals(0L, report.get("unreadable"));
+        assertEquals(true, report.get("truncated"));
+        assertTrue(validator.truncated());
+    }
+
+    @Test
+    public void stopsAtASyntaxError() throws IOException {
+        final Map<String, Object> report = validate("["
+                + event("5f0c6a8e-3b1d-4c9e-9d1a-6f2b7c8d9e01", "/pets/1") + ", "
+                + "{\"id\": ]"
+                + event("5f0c6a8e-3b1d-4c9e-9d1a-6f2b7c8d9e02", "/pets/2") + "]");
+
+        assertEquals(1L, report.get("validated"));
+        assertTrue(validator.truncated());
+    }
+
+    private Map<String, Object> validate(final String journal) throws IOException {
+        final File input = folder.newFile("requests.json");
+        Files.write(input.toPath(), journal.getBytes(StandardCharsets.UTF_8));
+        return validator.validate(input.toPath());
+    }
+
+    private static String event(final String id, final String url) {
+        return "{\"id\": \"" + id + "\", "
+                + "\"request\": {\"url\": \"" + url + "\", \"absoluteUrl\": \"http://localhost" + url + "\", "
+                + "\"method\": \"GET\", \"headers\": {\"Accept\": \"application/json\"}, \"loggedDate\": 0}, "
+                + "\"responseDefinition\": {\"status\": 200}, "
+                + "\"response\": {\"status\": 200, \"headers\": {\"Content-Type\": \"application/json\"}, \"body\": \"{\\\"id\\\": 1}\"}}";
+    }
+}
@@ -0,0 +1,43 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.extension.responsetemplating.ResponseTemplateTransformer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CommandLineOptionsTest {
+
+    @Test
+    public void passesWireMockOptionsOnToWireMock() {
+        final CommandLineOptions options = new CommandLineOptions("--port=8123", "--openapi-file=/orders=orders.yaml",
+                "--container-threads=30", "--openapi-sample-rate=0.5", "--local-response-templating",
+                "--template-cache-size=10", "--proxy-all=http://localhost:9000", "--mappings-index=index.json");
+
+        assertEquals(8123, options.portNumber());
+        assertEquals(30, options.containerThreads());
+        assertEquals("http://localhost:9000", options.proxyUrl());
+        assertFalse(options.extensionsOfType(ResponseTemplateTransformer.class).isEmpty());
+    }
+
+    @Test
+    public void keepsItsOwnOptionsFromWireMock() {
+        final CommandLineOptions options = new CommandLineOptions("--port=8123", "--openapi-file=/orders=orders.yaml",
+                "--openapi-sample-rate=0.5", "--local-response-templating", "--template-cache-size=10");
+
+        assertEquals(1, options.openAPISpecBindings().size());
+        assertEquals(0.5, options.openAPISampleRate(), 0);
+        assertTrue(options.responseTemplating());
+        assertEquals(10L, options.templateCacheSize());
+    }
+
+    @Test
+    public void leavesWireMockDefaultsAloneWithoutWireMockOptions() {
+        final CommandLineOptions options = new CommandLineOptions("--openapi-file=orders.yaml");
+
+        assertEquals(8080, options.portNumber());
+        assertFalse(options.specifiesProxyUrl());
+        assertTrue(options.extensionsOfType(ResponseTemplateTransformer.class).isEmpty());
+    }
+}
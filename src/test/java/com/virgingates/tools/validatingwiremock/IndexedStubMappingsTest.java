@@ -0,0 +1,145 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.MappingBuilder;
+import com.github.tomakehurst.wiremock.http.HttpHeaders;
+import com.github.tomakehurst.wiremock.http.Request;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.stubbing.InMemoryStubMappings;
+import com.github.tomakehurst.wiremock.stubbing.StubMappings;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.UUID;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.any;
+import static com.github.tomakehurst.wiremock.client.WireMock.get;
+import static com.github.tomakehurst.wiremock.client.WireMock.ok;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlPathEqualTo;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static com.github.tomakehurst.wiremock.stubbing.Scenario.STARTED;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every scenario is played against a server with WireMock's own {@link InMemoryStubMappings} and one with
+ * {@link IndexedStubMappings}, which must serve each request with the same stub.
+ */
+public class IndexedStubMappingsTest {
+
+    private WireMockServer plainServer;
+    private WireMockServer indexedServer;
+
+    @Before
+    public void setUp() throws ReflectiveOperationException {
+        plainServer = new WireMockServer(options().dynamicPort());
+        indexedServer = new WireMockServer(options().dynamicPort());
+        IndexedStubMappings.install(indexedServer);
+        assertTrue(stubMappingsOf(plainServer) instanceof InMemoryStubMappings);
+        assertTrue(stubMappingsOf(indexedServer) instanceof IndexedStubMappings);
+    }
+
+    @Test
+    public void picksTheMostRecentlyAddedStubOnPriorityTies() throws ReflectiveOperationException {
+        givenStub("url", get(urlEqualTo("/pets")));
+        givenStub("any method", any(urlPathEqualTo("/pets")));
+        givenStub("pattern", get(urlMatching("/pe.*")));
+        givenStub("other path", get(urlEqualTo("/cats")));
+
+        assertServedBy("pattern", RequestMethod.GET, "/pets");
+        assertServedBy("pattern", RequestMethod.GET, "/pets?name=rex");
+        assertServedBy("any method", RequestMethod.POST, "/pets");
+        assertServedBy(null, RequestMethod.POST, "/cats");
+    }
+
+    @Test
+    public void picksTheHighestPriorityStub() throws ReflectiveOperationException {
+        givenStub("url", get(urlEqualTo("/pets")).atPriority(1));
+        givenStub("catch-all", any(urlMatching(".*")).atPriority(5));
+        givenStub("url, lower priority", get(urlEqualTo("/pets")).atPriority(3));
+
+        assertServedBy("url", RequestMethod.GET, "/pets");
+        assertServedBy("catch-all", RequestMethod.DELETE, "/pets");
+    }
+
+    @Test
+    public void followsScenarioState() throws ReflectiveOperationException {
+        givenStub("unpaid", get(urlEqualTo("/order")).inScenario("order")
+                .whenScenarioStateIs(STARTED).willSetStateTo("paid"));
+        givenStub("paid", get(urlEqualTo("/order")).inScenario("order").whenScenarioStateIs("paid"));
+        givenStub("fallback", get(urlMatching("/ord.*")).atPriority(10));
+
+        assertServedBy("unpaid", RequestMethod.GET, "/order");
+        assertServedBy("paid", RequestMethod.GET, "/order");
+        assertServedBy("paid", RequestMethod.GET, "/order");
+
+        plainServer.resetScenarios();
+        indexedServer.resetScenarios();
+        assertServedBy("unpaid", RequestMethod.GET, "/order");
+    }
+
+    @Test
+    public void stopsServingRemovedStubs() throws ReflectiveOperationException {
+        final UUID id = UUID.randomUUID();
+        givenStub("pattern", get(urlMatching("/pets.*")));
+        givenStub("url", get(urlEqualTo("/pets")));
+        givenStub("by id", get(urlEqualTo("/cats")).withId(id));
+
+        // a new stub with an equal request pattern, but another id, as sent to POST /__admin/mappings/remove
+        plainServer.removeStub(get(urlEqualTo("/pets")));
+        indexedServer.removeStub(get(urlEqualTo("/pets")));
+        assertServedBy("pattern", RequestMethod.GET, "/pets");
+
+        plainServer.removeStub(get(urlEqualTo("/cats")).withId(id));
+        indexedServer.removeStub(get(urlEqualTo("/cats")).withId(id));
+        assertServedBy(null, RequestMethod.GET, "/cats");
+        assertEquals(plainServer.getStubMappings().size(), indexedServer.getStubMappings().size());
+    }
+
+    @Test
+    public void servesEditedStubsInPlace() throws ReflectiveOperationException {
+        final UUID id = UUID.randomUUID();
+        givenStub("first", get(urlEqualTo("/pets")).withId(id));
+        givenStub("second", get(urlEqualTo("/pets")));
+        givenStub("cats", get(urlEqualTo("/cats")));
+
+        // an edited stub keeps its place, so the stub added after it still wins the tie
+        editStub("first, edited", get(urlEqualTo("/pets")).withId(id));
+        assertServedBy("second", RequestMethod.GET, "/pets");
+
+        editStub("first, moved", get(urlEqualTo("/cats")).withId(id));
+        assertServedBy("second", RequestMethod.GET, "/pets");
+        assertServedBy("cats", RequestMethod.GET, "/cats");
+
+        editStub("first, prioritized", get(urlMatching("/.*")).atPriority(1).withId(id));
+        assertServedBy("first, prioritized", RequestMethod.GET, "/pets");
+        assertServedBy("first, prioritized", RequestMethod.GET, "/cats");
+    }
+
+    private void givenStub(final String name, final MappingBuilder mapping) {
+        plainServer.addStubMapping(mapping.withName(name).willReturn(ok()).build());
+        indexedServer.addStubMapping(mapping.withName(name).willReturn(ok()).build());
+    }
+
+    private void editStub(final String name, final MappingBuilder mapping) {
+        plainServer.editStub(mapping.withName(name).willReturn(ok()));
+        indexedServer.editStub(mapping.withName(name).willReturn(ok()));
+    }
+
+    private void assertServedBy(final String name, final RequestMethod method, final String url)
+            throws ReflectiveOperationException {
+        final Request request = new LoggedRequest(url, "http://localhost" + url, method, "127.0.0.1", new HttpHeaders(),
+                Collections.emptyMap(), false, new Date(), new byte[0], null);
+        assertEquals("WireMock", name, stubMappingsOf(plainServer).serveFor(request).getStubMapping().getName());
+        assertEquals("indexed", name, stubMappingsOf(indexedServer).serveFor(request).getStubMapping().getName());
+    }
+
+    private static StubMappings stubMappingsOf(final WireMockServer server) throws ReflectiveOperationException {
+        return (StubMappings) WireMockInternals.read(WireMockInternals.wireMockApp(server), "stubMappings");
+    }
+}
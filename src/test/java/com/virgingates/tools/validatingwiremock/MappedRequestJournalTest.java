@@ -0,0 +1,188 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.core.WireMockConfiguration;
+import com.github.tomakehurst.wiremock.http.HttpHeaders;
+import com.github.tomakehurst.wiremock.http.RequestMethod;
+import com.github.tomakehurst.wiremock.http.ResponseDefinition;
+import com.github.tomakehurst.wiremock.matching.RequestPattern;
+import com.github.tomakehurst.wiremock.stubbing.ServeEvent;
+import com.github.tomakehurst.wiremock.verification.InMemoryRequestJournal;
+import com.github.tomakehurst.wiremock.verification.LoggedRequest;
+import com.github.tomakehurst.wiremock.verification.RequestJournal;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import wiremock.com.google.common.base.Optional;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static com.github.tomakehurst.wiremock.client.WireMock.anyRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.getRequestedFor;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlEqualTo;
+import static com.github.tomakehurst.wiremock.client.WireMock.urlMatching;
+import static com.github.tomakehurst.wiremock.core.WireMockConfiguration.options;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Every scenario is played against WireMock's own {@link InMemoryRequestJournal} and a {@link MappedRequestJournal}
+ * installed on a server, which must hold the same events, minus the oldest ones the ring had no room for. Request
+ * bodies are random, so that every event takes about the same room in the ring once deflated.
+ */
+public class MappedRequestJournalTest {
+
+    private static final int CAPACITY = 4096;
+    private static final int BODY_SIZE = 300;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Random random = new Random(42);
+    private final List<ServeEvent> journaled = new ArrayList<>();
+    private RequestJournal wireMockJournal;
+    private MappedRequestJournal mappedJournal;
+
+    @Test
+    public void keepsRecordsThatWouldStraddleTheEndOfTheRingWhole() throws ReflectiveOperationException, IOException {
+        install(options());
+        final InMemoryRequestJournal reference = new InMemoryRequestJournal(Optional.absent());
+
+        // about three events fit, so the ring wraps several times, mostly with a record that does not fit at its end
+        for (int i = 0; i < 20; i++) {
+            journal(reference, event(RequestMethod.GET, "/pets/" + i % 4, BODY_SIZE));
+        }
+
+        assertRetainsTheNewest(reference, 2);
+    }
+
+    @Test
+    public void leavesOutARecordLargerThanTheRing() throws ReflectiveOperationException, IOException {
+        install(options());
+        final InMemoryRequestJournal reference = new InMemoryRequestJournal(Optional.absent());
+        journal(reference, event(RequestMethod.GET, "/pets/1", 100));
+        journal(reference, event(RequestMethod.POST, "/pets", 100));
+
+        wireMockJournal.requestReceived(event(RequestMethod.POST, "/pets", 2 * CAPACITY));
+
+        assertSameEvents(reference);
+    }
+
+    @Test
+    public void wrapsOverRemovedEvents() throws ReflectiveOperationException, IOException {
+        install(options());
+        final InMemoryRequestJournal reference = new InMemoryRequestJournal(Optional.absent());
+        for (int i = 0; i < 3; i++) {
+            journal(reference, event(RequestMethod.GET, "/pets/" + i, BODY_SIZE));
+        }
+        remove(reference, journaled.get(1).getId());
+        final RequestPattern last = getRequestedFor(urlEqualTo("/pets/2")).build();
+        assertEquals(reference.removeEventsMatching(last).size(), mappedJournal.removeEventsMatching(last).size());
+        assertSameEvents(reference);
+
+        for (int i = 3; i < 12; i++) {
+            journal(reference, event(i % 2 == 0 ? RequestMethod.GET : RequestMethod.POST, "/pets/" + i, BODY_SIZE));
+            if (i % 3 == 0) {
+                remove(reference, journaled.get(journaled.size() - 2).getId());
+            }
+        }
+
+        assertRetainsTheNewest(reference, 1);
+    }
+
+    @Test
+    public void honoursTheMaximumNumberOfEntries() throws ReflectiveOperationException, IOException {
+        // WireMock's journal polls the oldest events out of the queue the ring stands in for
+        install(options().maxRequestJournalEntries(2));
+        final InMemoryRequestJournal reference = new InMemoryRequestJournal(Optional.of(2));
+
+        for (int i = 0; i < 7; i++) {
+            journal(reference, event(RequestMethod.GET, "/pets/" + i % 3, 100));
+            assertSameEvents(reference);
+        }
+        remove(reference, journaled.get(journaled.size() - 1).getId());
+        journal(reference, event(RequestMethod.GET, "/pets/1", BODY_SIZE));
+        journal(reference, event(RequestMethod.GET, "/pets/2", BODY_SIZE));
+
+        assertSameEvents(reference);
+    }
+
+    private void install(final WireMockConfiguration configuration) throws ReflectiveOperationException, IOException {
+        final WireMockServer server = new WireMockServer(configuration.dynamicPort());
+        // WireMock keeps journaling through the journal it created, whose queue is now the ring
+        wireMockJournal = (RequestJournal) WireMockInternals.read(WireMockInternals.wireMockApp(server), "requestJournal");
+        mappedJournal = MappedRequestJournal.install(server, folder.getRoot().toPath().resolve("journal"), CAPACITY);
+    }
+
+    private void journal(final RequestJournal reference, final ServeEvent event) {
+        journaled.add(event);
+        reference.requestReceived(event);
+        wireMockJournal.requestReceived(event);
+    }
+
+    private void remove(final RequestJournal reference, final UUID id) {
+        reference.removeEvent(id);
+        mappedJournal.removeEvent(id);
+    }
+
+    private ServeEvent event(final RequestMethod method, final String url, final int bodySize) {
+        final byte[] body = new byte[bodySize];
+        random.nextBytes(body);
+        final LoggedRequest request = new LoggedRequest(url, "http://localhost" + url, method, "127.0.0.1",
+                new HttpHeaders(), Collections.emptyMap(), false, new Date(), body, null);
+        return ServeEvent.of(request, ResponseDefinition.ok());
+    }
+
+    /**
+     * Checks that the ring holds the newest events of the reference, and that it had to evict some.
+     */
+    private void assertRetainsTheNewest(final InMemoryRequestJournal reference, final int atLeast) {
+        final List<ServeEvent> all = reference.getAllServeEvents();
+        final int retained = mappedJournal.getAllServeEvents().size();
+        assertTrue("retained " + retained, retained >= atLeast && retained < all.size());
+
+        final InMemoryRequestJournal newest = new InMemoryRequestJournal(Optional.absent());
+        for (int i = retained - 1; i >= 0; i--) {
+            newest.requestReceived(all.get(i));
+        }
+        assertSameEvents(newest);
+    }
+
+    private void assertSameEvents(final RequestJournal expected) {
+        final List<ServeEvent> expectedEvents = expected.getAllServeEvents();
+        final List<ServeEvent> events = mappedJournal.getAllServeEvents();
+        assertEquals(expectedEvents.size(), events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertSameEvent(expectedEvents.get(i), events.get(i));
+        }
+        for (final ServeEvent event : journaled) {
+            assertEquals(event.getId().toString(), expected.getServeEvent(event.getId()).isPresent(),
+                    mappedJournal.getServeEvent(event.getId()).isPresent());
+        }
+        for (final RequestPattern pattern : new RequestPattern[]{anyRequestedFor(urlMatching(".*")).build(),
+                getRequestedFor(urlMatching("/pets/1")).build(), anyRequestedFor(urlEqualTo("/pets")).build()}) {
+            final List<LoggedRequest> expectedRequests = expected.getRequestsMatching(pattern);
+            final List<LoggedRequest> requests = mappedJournal.getRequestsMatching(pattern);
+            assertEquals(expectedRequests.size(), requests.size());
+            assertEquals(expected.countRequestsMatching(pattern), mappedJournal.countRequestsMatching(pattern));
+            for (int i = 0; i < requests.size(); i++) {
+                assertEquals(expectedRequests.get(i).getUrl(), requests.get(i).getUrl());
+                assertArrayEquals(expectedRequests.get(i).getBody(), requests.get(i).getBody());
+            }
+        }
+    }
+
+    private static void assertSameEvent(final ServeEvent expected, final ServeEvent event) {
+        assertEquals(expected.getId(), event.getId());
+        assertEquals(expected.getRequest().getMethod(), event.getRequest().getMethod());
+        assertEquals(expected.getRequest().getUrl(), event.getRequest().getUrl());
+        assertArrayEquals(expected.getRequest().getBody(), event.getRequest().getBody());
+    }
+}
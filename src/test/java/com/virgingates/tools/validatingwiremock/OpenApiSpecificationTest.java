@@ -0,0 +1,75 @@
+package com.virgingates.tools.validatingwiremock;
+
+import com.atlassian.oai.validator.model.Request;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class OpenApiSpecificationTest {
+
+    private static final String SPEC = "openapi: 3.0.0\n"
+            + "info: {title: Pets, version: '1'}\n"
+            + "paths:\n"
+            + "  /pets:\n"
+            + "    get:\n"
+            + "      responses: {'200': {description: ok}}\n"
+            + "    post:\n"
+            + "      responses: {'201': {description: created}}\n"
+            + "  /pets/{petId}:\n"
+            + "    get:\n"
+            + "      responses: {'200': {description: ok}}\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private OpenApiSpecification specification;
+
+    @Before
+    public void setUp() throws IOException {
+        final File spec = folder.newFile("spec.yaml");
+        Files.write(spec.toPath(), SPEC.getBytes(StandardCharsets.UTF_8));
+        specification = OpenApiSpecification.load(spec.getPath(), "pets");
+    }
+
+    @Test
+    public void resolvesTheOperationOfEachMethodAndPath() {
+        assertEquals("pets GET /pets", specification.operationFor("/pets", Request.Method.GET));
+        assertEquals("pets POST /pets", specification.operationFor("/pets", Request.Method.POST));
+        assertEquals("pets GET /pets/{petId}", specification.operationFor("/pets/1?verbose=true", Request.Method.GET));
+        assertEquals("pets " + OpenApiSpecification.UNMATCHED_OPERATION,
+                specification.operationFor("/pets/1", Request.Method.DELETE));
+        assertEquals("pets " + OpenApiSpecification.UNMATCHED_OPERATION,
+                specification.operationFor("/cats", Request.Method.GET));
+    }
+
+    @Test
+    public void resolvesARepeatedPathWhateverItsQuery() {
+        final String operation = specification.operationFor("/pets/1", Request.Method.GET);
+
+        assertSame(operation, specification.operationFor("/pets/1", Request.Method.GET));
+        assertSame(operation, specification.operationFor("/pets/1?verbose=true", Request.Method.GET));
+        assertSame(operation, specification.operationFor("/pets/2", Request.Method.GET));
+        assertEquals("pets " + OpenApiSpecification.UNMATCHED_OPERATION,
+                specification.operationFor("/pets/1", Request.Method.PUT));
+        assertSame(operation, specification.operationFor("/pets/1", Request.Method.GET));
+    }
+
+    @Test
+    public void tellsApartPathsSharingACacheSlot() {
+        // far more distinct paths than the cache holds, so many share a slot
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals("pets GET /pets/{petId}", specification.operationFor("/pets/" + i, Request.Method.GET));
+            assertEquals("pets " + OpenApiSpecification.UNMATCHED_OPERATION,
+                    specification.operationFor("/pets/" + i + "/toys", Request.Method.GET));
+        }
+    }
+}